@@ -0,0 +1,69 @@
+package uk.creatopia.death_detangler;
+
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic candidate populations for the benchmarks.
+ * Live players and levels need a bootstrapped game, so fixtures carry the same signals
+ * the heuristics read from a player: connection state, player list membership,
+ * persistent data and tick count.
+ */
+public class BenchmarkFixtures {
+
+    /**
+     * A stubbed player-type entity.
+     */
+    public static class Candidate {
+        public final UUID uuid;
+        public final boolean noConnection;
+        public final boolean notInPlayerList;
+        public final CompoundTag data;
+        public final int tickCount;
+
+        Candidate(UUID uuid, boolean noConnection, boolean notInPlayerList, CompoundTag data, int tickCount) {
+            this.uuid = uuid;
+            this.noConnection = noConnection;
+            this.notInPlayerList = notInPlayerList;
+            this.data = data;
+            this.tickCount = tickCount;
+        }
+    }
+
+    private static final String[] CLONE_KEYS = {"HardcoreRevival", "IsRevivalClone", "corpse", "HCRevivalFixClone"};
+    private static final String[] PLAYER_KEYS = {"PlayerPersisted", "curios", "ftbquests", "Spawn"};
+
+    /**
+     * Builds a deterministic population of candidates.
+     *
+     * @param size Number of candidates
+     * @param cloneRatio Fraction of candidates that are orphan clones
+     * @param seed Random seed
+     * @return The population, clones spread randomly among live players
+     */
+    public static List<Candidate> population(int size, double cloneRatio, long seed) {
+        Random random = new Random(seed);
+        List<Candidate> candidates = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            CompoundTag data = new CompoundTag();
+
+            if (random.nextDouble() < cloneRatio) {
+                data.putBoolean(CLONE_KEYS[random.nextInt(CLONE_KEYS.length)], true);
+                candidates.add(new Candidate(uuid, true, true, data, 200 + random.nextInt(100_000)));
+            } else {
+                for (int k = random.nextInt(PLAYER_KEYS.length); k > 0; k--) {
+                    data.putInt(PLAYER_KEYS[random.nextInt(PLAYER_KEYS.length)], k);
+                }
+                candidates.add(new Candidate(uuid, false, false, data, random.nextInt(100_000)));
+            }
+        }
+
+        return candidates;
+    }
+}
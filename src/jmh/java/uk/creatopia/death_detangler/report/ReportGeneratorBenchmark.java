@@ -0,0 +1,63 @@
+package uk.creatopia.death_detangler.report;
+
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+import org.openjdk.jmh.annotations.*;
+import uk.creatopia.death_detangler.scan.ScanResult;
+import uk.creatopia.death_detangler.util.CloneFlags;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and write cost of a JSON report for results of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReportGeneratorBenchmark {
+
+    @Param({"100", "10000", "50000"})
+    public int clones;
+
+    private ScanResult result;
+    private Path reportPath;
+
+    @Setup
+    public void setup() throws IOException {
+        ResourceKey<Level> dimension = ResourceKey.create(Registries.DIMENSION, new ResourceLocation("minecraft", "overworld"));
+        Random random = new Random(42L);
+
+        List<ScanResult.EntityInfo> entities = new ArrayList<>(clones);
+        for (int i = 0; i < clones; i++) {
+            entities.add(new ScanResult.EntityInfo(
+                new UUID(random.nextLong(), random.nextLong()).toString(),
+                dimension.location().toString(),
+                random.nextInt(100_000),
+                CloneFlags.NO_CONNECTION | CloneFlags.NOT_IN_PLAYER_LIST | CloneFlags.HARDCORE_REVIVAL | CloneFlags.REVIVAL_TAG
+            ));
+        }
+
+        Map<ResourceKey<Level>, Integer> perDimension = new HashMap<>();
+        perDimension.put(dimension, clones);
+        result = new ScanResult(clones, perDimension, entities);
+
+        reportPath = Files.createTempFile("death_detangler_report", ".json");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(reportPath);
+    }
+
+    @Benchmark
+    public Path writeReport() throws IOException {
+        ReportGenerator.writeReport(reportPath, result);
+        return reportPath;
+    }
+}
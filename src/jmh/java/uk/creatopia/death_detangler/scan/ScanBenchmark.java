@@ -0,0 +1,60 @@
+package uk.creatopia.death_detangler.scan;
+
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+import org.openjdk.jmh.annotations.*;
+import uk.creatopia.death_detangler.BenchmarkFixtures;
+import uk.creatopia.death_detangler.util.CloneHeuristics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the classify and tally phases of a scan pass over a synthetic candidate population, without a running server:
+ * the snapshots {@link ScanPass} would capture are classified with {@link ScanPass#classify}
+ * and the orphans recorded by the same {@link ScanPass.Tally} the pass's apply phase uses.
+ * Taking the snapshots and re-checking live entities before removal need a server and are not measured.
+ * Lives in the scan package so it can reach both without widening their visibility.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScanBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int population;
+
+    @Param({"0.0", "0.01", "0.1"})
+    public double cloneRatio;
+
+    private List<CandidateSnapshot> snapshots;
+
+    @Setup
+    public void setup() {
+        ResourceKey<Level> dimension = ResourceKey.create(Registries.DIMENSION, new ResourceLocation("minecraft", "overworld"));
+
+        snapshots = new ArrayList<>(population);
+        for (BenchmarkFixtures.Candidate c : BenchmarkFixtures.population(population, cloneRatio, 42L)) {
+            snapshots.add(new CandidateSnapshot(
+                c.uuid,
+                dimension,
+                c.noConnection,
+                c.notInPlayerList,
+                CloneHeuristics.getRevivalKeyMask(c.data),
+                c.tickCount
+            ));
+        }
+    }
+
+    @Benchmark
+    public ScanResult scanWithDetails() {
+        ScanPass.Tally tally = new ScanPass.Tally();
+        for (CandidateSnapshot orphan : ScanPass.classify(snapshots)) {
+            tally.add(orphan);
+        }
+        return tally.toResult(0, null);
+    }
+}
@@ -0,0 +1,47 @@
+package uk.creatopia.death_detangler.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.creatopia.death_detangler.BenchmarkFixtures;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-candidate cost of the clone heuristics: the allocation-free mask path used by scans
+ * versus decoding the readable flag list used by reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CloneHeuristicsBenchmark {
+
+    @Param({"0.0", "0.1", "0.5"})
+    public double cloneRatio;
+
+    private BenchmarkFixtures.Candidate[] candidates;
+
+    @Setup
+    public void setup() {
+        List<BenchmarkFixtures.Candidate> population = BenchmarkFixtures.population(1024, cloneRatio, 42L);
+        candidates = population.toArray(new BenchmarkFixtures.Candidate[0]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void isOrphanClone(Blackhole bh) {
+        for (BenchmarkFixtures.Candidate c : candidates) {
+            bh.consume(CloneFlags.isOrphan(
+                CloneHeuristics.computeMask(c.noConnection, c.notInPlayerList, c.data, c.tickCount)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void getCloneFlags(Blackhole bh) {
+        for (BenchmarkFixtures.Candidate c : candidates) {
+            bh.consume(CloneFlags.decode(
+                CloneHeuristics.computeMask(c.noConnection, c.notInPlayerList, c.data, c.tickCount)));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package uk.creatopia.death_detangler.util;
+
+import net.minecraft.resources.ResourceLocation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Join-hook classification cost per entity: resolving and matching the registry name every time
+ * versus the baked identity lookup. Registry names stand in for entity types, since building
+ * real {@code EntityType}s requires a bootstrapped game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityTypeClassifierBenchmark {
+
+    private static final String[] TYPES = {
+        "minecraft:zombie", "minecraft:item", "minecraft:experience_orb", "minecraft:cow",
+        "minecraft:arrow", "minecraft:villager", "minecraft:player", "create:contraption",
+        "alexsmobs:crow", "hardcorerevival:revival_clone"
+    };
+
+    private ResourceLocation[] joins;
+    private Map<ResourceLocation, EntityTypeClassifier.Kind> baked;
+
+    @Setup
+    public void setup() {
+        ResourceLocation[] keys = new ResourceLocation[TYPES.length];
+        baked = new IdentityHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            keys[i] = new ResourceLocation(TYPES[i]);
+            baked.put(keys[i], EntityTypeClassifier.classifyKey(keys[i]));
+        }
+
+        Random random = new Random(42L);
+        joins = new ResourceLocation[1024];
+        for (int i = 0; i < joins.length; i++) {
+            joins[i] = keys[random.nextInt(keys.length)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void registryNameMatch(Blackhole bh) {
+        for (ResourceLocation key : joins) {
+            bh.consume(EntityTypeClassifier.classifyKey(key));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void bakedLookup(Blackhole bh) {
+        for (ResourceLocation key : joins) {
+            bh.consume(baked.get(key));
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package uk.creatopia.death_detangler;
 
+import net.minecraft.server.MinecraftServer;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.config.ModConfigEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
+import uk.creatopia.death_detangler.scan.ScanCache;
+import uk.creatopia.death_detangler.util.DetectionRules;
+import uk.creatopia.death_detangler.util.EntityTypeClassifier;
+
+import java.util.List;
 
 @Mod.EventBusSubscriber(modid = DeathDetanglerMain.MODID, bus = Mod.EventBusSubscriber.Bus.MOD)
 public class Config {
@@ -34,6 +41,94 @@ public class Config {
                      "Default: 6000 (5 minutes at 20 TPS). Set to 0 to disable periodic cleanup.")
             .defineInRange("cleanIntervalTicks", 6000, 0, Integer.MAX_VALUE);
 
+    private static final ForgeConfigSpec.IntValue SCAN_TICK_BUDGET_MICROS = BUILDER
+            .comment("Maximum time in microseconds a periodic cleanup may spend per tick.",
+                     "Longer passes are resumed on the following ticks. Set to 0 to run each pass in a single tick.")
+            .defineInRange("scanTickBudgetMicros", 500, 0, 50_000);
+
+    private static final ForgeConfigSpec.IntValue REMOVALS_PER_TICK = BUILDER
+            .comment("Maximum number of orphan clones discarded per tick by scans and cleanups.",
+                     "Further removals are queued, grouped by chunk, and applied on the following ticks. Set to 0 for no limit.")
+            .defineInRange("removalsPerTick", 64, 0, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.IntValue SCAN_CACHE_MAX_AGE_TICKS = BUILDER
+            .comment("Maximum age in ticks of a scan result reused by /death_detangler scan, report and dump.",
+                     "A result is only reused while no player entity has joined or left since it was taken;",
+                     "/death_detangler run always scans afresh. Set to 0 to scan on every command.")
+            .defineInRange("scanCacheMaxAgeTicks", 600, 0, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.IntValue ORPHAN_GRACE_TICKS = BUILDER
+            .comment("Ticks a tracked revival clone may outlive its owner's revival before it is discarded.",
+                     "The timer starts when the owner logs out, is revived, or otherwise leaves the revival state.")
+            .defineInRange("orphanGraceTicks", 100, 0, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.BooleanValue REPORT_GZIP = BUILDER
+            .comment("Write the report produced by /death_detangler dump gzip-compressed.",
+                     "The file is then named death_detangler_report.json.gz.")
+            .define("reportGzip", false);
+
+    private static final ForgeConfigSpec.BooleanValue HISTORY_ENABLED = BUILDER
+            .comment("Record every periodic, startup and /death_detangler run scan in an append-only history",
+                     "under <world>/death_detangler/history, queryable with /death_detangler history.")
+            .define("historyEnabled", true);
+
+    private static final ForgeConfigSpec.IntValue HISTORY_SEGMENT_MAX_KB = BUILDER
+            .comment("Size in KB after which the active history segment is sealed and a new one started.")
+            .defineInRange("historySegmentMaxKb", 1024, 16, 1024 * 1024);
+
+    private static final ForgeConfigSpec.IntValue HISTORY_SEGMENT_MAX_HOURS = BUILDER
+            .comment("Age in hours after which the active history segment is sealed and a new one started.")
+            .defineInRange("historySegmentMaxHours", 24, 1, 24 * 365);
+
+    private static final ForgeConfigSpec.IntValue HISTORY_RETENTION_DAYS = BUILDER
+            .comment("History segments whose newest entry is older than this many days are deleted.")
+            .defineInRange("historyRetentionDays", 90, 1, 3650);
+
+    private static final ForgeConfigSpec.BooleanValue METRICS_EXPORT_ENABLED = BUILDER
+            .comment("Periodically write scan and clone metrics in Prometheus text format",
+                     "to <world>/death_detangler/metrics.prom, e.g. for the node_exporter textfile collector.")
+            .define("metricsExportEnabled", false);
+
+    private static final ForgeConfigSpec.IntValue METRICS_EXPORT_INTERVAL_TICKS = BUILDER
+            .comment("Interval in ticks between metrics file exports.",
+                     "Default: 1200 (1 minute at 20 TPS).")
+            .defineInRange("metricsExportIntervalTicks", 1200, 20, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.IntValue LOG_WINDOW_SECONDS = BUILDER
+            .comment("Length in seconds of the window used to rate-limit clone and respawn log messages.",
+                     "Messages beyond the per-window sample are counted and summarized when the window closes.")
+            .defineInRange("logWindowSeconds", 10, 1, 3600);
+
+    private static final ForgeConfigSpec.IntValue LOG_SAMPLES_PER_WINDOW = BUILDER
+            .comment("Maximum number of log messages of one kind written individually per window.")
+            .defineInRange("logSamplesPerWindow", 5, 0, 10_000);
+
+    private static final ForgeConfigSpec.IntValue LOG_QUEUE_CAPACITY = BUILDER
+            .comment("Capacity of the asynchronous log queue. When it is full, messages are dropped and counted",
+                     "rather than slowing down the server thread. Takes effect on the next game start.")
+            .defineInRange("logQueueCapacity", 1024, 16, 1 << 20);
+
+    private static final ForgeConfigSpec.ConfigValue<List<? extends String>> CLONE_RULES = BUILDER
+            .comment("Rules that identify a Hardcore Revival clone, as <kind>:<name>=<weight>.",
+                     "Kinds: nbt (persistent data key present), flag (persistent data key is true),",
+                     "tag (entity has the scoreboard tag), type (entity type registry name contains the text).",
+                     "An entity is a clone when the weights of its matching rules reach cloneRuleThreshold.",
+                     "nbt and flag rules with a weight of 0 or more are also the markers scans look for;",
+                     "a weight of 0 makes a key a scan marker only.")
+            .defineList("cloneRules", DetectionRules.DEFAULT_CLONE_RULES, DetectionRules::isValidRule);
+
+    private static final ForgeConfigSpec.IntValue CLONE_RULE_THRESHOLD = BUILDER
+            .comment("Score at which an entity counts as a Hardcore Revival clone.")
+            .defineInRange("cloneRuleThreshold", 1, 1, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.ConfigValue<List<? extends String>> KNOCKOUT_RULES = BUILDER
+            .comment("Rules that identify a player knocked out by Hardcore Revival, in the same form as cloneRules.")
+            .defineList("knockoutRules", DetectionRules.DEFAULT_KNOCKOUT_RULES, DetectionRules::isValidRule);
+
+    private static final ForgeConfigSpec.IntValue KNOCKOUT_RULE_THRESHOLD = BUILDER
+            .comment("Score at which a player counts as knocked out.")
+            .defineInRange("knockoutRuleThreshold", 1, 1, Integer.MAX_VALUE);
+
     static final ForgeConfigSpec SPEC = BUILDER.build();
 
     public static boolean enableLogNotifications;
@@ -41,6 +136,20 @@ public class Config {
     public static boolean autoRemove;
     public static boolean verboseLogging;
     public static int cleanIntervalTicks;
+    public static int scanTickBudgetMicros;
+    public static int removalsPerTick;
+    public static int scanCacheMaxAgeTicks;
+    public static int orphanGraceTicks;
+    public static boolean reportGzip;
+    public static boolean historyEnabled;
+    public static int historySegmentMaxKb;
+    public static int historySegmentMaxHours;
+    public static int historyRetentionDays;
+    public static boolean metricsExportEnabled;
+    public static int metricsExportIntervalTicks;
+    public static int logWindowSeconds;
+    public static int logSamplesPerWindow;
+    public static int logQueueCapacity;
 
     @SubscribeEvent
     static void onLoad(final ModConfigEvent event) {
@@ -49,6 +158,41 @@ public class Config {
         autoRemove = AUTO_REMOVE.get();
         verboseLogging = VERBOSE_LOGGING.get();
         cleanIntervalTicks = CLEAN_INTERVAL_TICKS.get();
+        scanTickBudgetMicros = SCAN_TICK_BUDGET_MICROS.get();
+        removalsPerTick = REMOVALS_PER_TICK.get();
+        scanCacheMaxAgeTicks = SCAN_CACHE_MAX_AGE_TICKS.get();
+        orphanGraceTicks = ORPHAN_GRACE_TICKS.get();
+        reportGzip = REPORT_GZIP.get();
+        historyEnabled = HISTORY_ENABLED.get();
+        historySegmentMaxKb = HISTORY_SEGMENT_MAX_KB.get();
+        historySegmentMaxHours = HISTORY_SEGMENT_MAX_HOURS.get();
+        historyRetentionDays = HISTORY_RETENTION_DAYS.get();
+        metricsExportEnabled = METRICS_EXPORT_ENABLED.get();
+        metricsExportIntervalTicks = METRICS_EXPORT_INTERVAL_TICKS.get();
+        logWindowSeconds = LOG_WINDOW_SECONDS.get();
+        logSamplesPerWindow = LOG_SAMPLES_PER_WINDOW.get();
+        logQueueCapacity = LOG_QUEUE_CAPACITY.get();
+
+        // Compiled rules are immutable and published through a volatile field, so any thread may swap them
+        DetectionRules.setCurrent(DetectionRules.compile(
+                CLONE_RULES.get(), CLONE_RULE_THRESHOLD.get(),
+                KNOCKOUT_RULES.get(), KNOCKOUT_RULE_THRESHOLD.get()));
+
+        // Reloads arrive on the config watcher thread; the rest belongs to the server thread
+        if (event instanceof ModConfigEvent.Reloading) {
+            MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+            if (server != null) {
+                server.execute(Config::onRulesChanged);
+            } else {
+                onRulesChanged();
+            }
+        }
+    }
+
+    private static void onRulesChanged() {
+        // Entity types are classified once at setup and a cached scan was classified with the old rules
+        EntityTypeClassifier.bake();
+        ScanCache.invalidate();
     }
 }
 
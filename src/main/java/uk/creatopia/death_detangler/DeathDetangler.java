@@ -1,30 +1,44 @@
 package uk.creatopia.death_detangler;
 
 import com.mojang.logging.LogUtils;
-import net.minecraft.resources.ResourceLocation;
+import net.minecraft.core.SectionPos;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.capabilities.ICapabilityProvider;
+import net.minecraftforge.common.util.LazyOptional;
 import net.minecraftforge.event.AttachCapabilitiesEvent;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityEvent;
 import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.EntityLeaveLevelEvent;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
-import net.minecraftforge.registries.ForgeRegistries;
-import net.minecraftforge.server.ServerLifecycleHooks;
 import org.slf4j.Logger;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
+import uk.creatopia.death_detangler.api.RevivalMarker;
+import uk.creatopia.death_detangler.lifecycle.CloneExpiryQueue;
+import uk.creatopia.death_detangler.lifecycle.CloneRegistry;
+import uk.creatopia.death_detangler.lifecycle.CloneTracker;
+import uk.creatopia.death_detangler.logging.EventLog;
+import uk.creatopia.death_detangler.metrics.DeathDetanglerMetrics;
+import uk.creatopia.death_detangler.scan.CloneIndex;
+import uk.creatopia.death_detangler.util.CloneHeuristics;
+import uk.creatopia.death_detangler.util.EntityTypeClassifier;
+import uk.creatopia.death_detangler.util.TotemSlotIndex;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Death Detangler - Fixes compatibility issues between Hardcore Revival and other death-related mods.
@@ -34,6 +48,7 @@ import java.util.concurrent.ConcurrentHashMap;
  *  - Mark them so other mods can know they're not real deaths.
  *  - Block death handling on clones so corpse/grave mods don't trigger.
  *  - Track clones per player and clean them up on respawn/logout/server stop.
+ *  - Expire clones exactly when they become orphaned, instead of polling.
  */
 @Mod.EventBusSubscriber(modid = "death_detangler")
 public class DeathDetangler {
@@ -53,11 +68,16 @@ public class DeathDetangler {
     private static final String KEY_IN_REVIVAL = "DeathDetanglerInRevival";
     private static final String KEY_IS_REVIVAL_CLONE = "IsRevivalClone";
 
-    // Track active revival clones by player UUID
-    private static final Map<UUID, Entity> activeClones = new ConcurrentHashMap<>();
+    private static final ResourceLocation REVIVAL_MARKER_ID = new ResourceLocation("death_detangler", "revival_marker");
+
+    // Each player's active revival clone and revival state, keyed by player UUID
+    private static final CloneTracker tracker = new CloneTracker();
 
-    // Track players currently in a revival state
-    private static final Set<UUID> playersInRevival = ConcurrentHashMap.newKeySet();
+    // Pending expiries for clones whose owner is offline or no longer in revival
+    private static final CloneExpiryQueue expiryQueue = new CloneExpiryQueue();
+
+    // Orphaned clones found as their chunk loaded, removed on the next server tick
+    private static final Deque<Entity> loadSweepQueue = new ArrayDeque<>();
 
     // ---------------------------------------------------------------------
     // 1) Detect Hardcore Revival clones when they join the world
@@ -66,12 +86,17 @@ public class DeathDetangler {
     public static void onEntityJoinLevel(EntityJoinLevelEvent event) {
         if (event.getLevel().isClientSide()) return;
 
+        long start = System.nanoTime();
         Entity entity = event.getEntity();
 
+        if (entity instanceof ServerPlayer player) {
+            CloneIndex.add(event.getLevel().dimension(), player);
+        }
+
         try {
             if (isHardcoreRevivalClone(entity)) {
                 if (shouldLog()) {
-                    LOGGER.info("[{}] Detected Hardcore Revival clone: {} at {}",
+                    EventLog.info(LOGGER, "clone_detected", "[{}] Detected Hardcore Revival clone: {} at {}",
                             MOD_NAME, entity.getUUID(), entity.position());
                 }
 
@@ -80,19 +105,115 @@ public class DeathDetangler {
                 data.putLong(KEY_SPAWN_TIME, event.getLevel().getGameTime());
                 data.putBoolean(KEY_IS_REVIVAL_CLONE, true);
 
+                RevivalMarker marker = RevivalMarker.get(entity);
+                if (marker != null) {
+                    marker.setClone(true);
+                }
+
                 UUID ownerUUID = getCloneOwnerUUID(entity);
+
+                // A clone loaded back with its chunk outlived its owner's revival while nobody was nearby
+                MinecraftServer server = entity.getServer();
+                if (event.loadedFromDisk() && server != null
+                        && (ownerUUID == null || isOwnerGone(server, ownerUUID))) {
+                    loadSweepQueue.add(entity);
+                }
+
                 if (ownerUUID != null) {
                     data.putUUID(KEY_OWNER, ownerUUID);
-                    activeClones.put(ownerUUID, entity);
-                    playersInRevival.add(ownerUUID);
+                    tracker.trackClone(ownerUUID, entity.getUUID(), event.getLevel().dimension());
 
                     if (shouldLog()) {
-                        LOGGER.info("[{}] Registered clone for player UUID: {}", MOD_NAME, ownerUUID);
+                        EventLog.info(LOGGER, "clone_registered", "[{}] Registered clone for player UUID: {}", MOD_NAME, ownerUUID);
+                    }
+
+                    if (server != null) {
+                        // Persist the clone so a restart can find it without scanning the world
+                        CloneRegistry.get(server).register(entity.getUUID(), ownerUUID, event.getLevel().dimension(),
+                                entity.chunkPosition().toLong(), event.getLevel().getGameTime());
+                        reevaluateClone(server, ownerUUID);
                     }
                 }
             }
         } catch (Exception ex) {
-            LOGGER.warn("[{}] Exception while checking entity for HC Revival clone", MOD_NAME, ex);
+            EventLog.warn(LOGGER, "join_error", "[{}] Exception while checking entity for HC Revival clone", MOD_NAME, ex);
+        } finally {
+            DeathDetanglerMetrics.recordJoinHook(System.nanoTime() - start);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // 1b) Drop entities from the candidate index and clone tracking when they leave
+    // ---------------------------------------------------------------------
+    @SubscribeEvent
+    public static void onEntityLeaveLevel(EntityLeaveLevelEvent event) {
+        if (event.getLevel().isClientSide()) return;
+
+        Entity entity = event.getEntity();
+        if (entity instanceof ServerPlayer player) {
+            CloneIndex.remove(event.getLevel().dimension(), player);
+        }
+
+        if (!canBeClone(entity)) return;
+
+        try {
+            CompoundTag data = entity.getPersistentData();
+            if (!data.getBoolean(KEY_CLONE_MARK) || !data.hasUUID(KEY_OWNER)) return;
+
+            UUID ownerUUID = data.getUUID(KEY_OWNER);
+            MinecraftServer server = entity.getServer();
+            if (tracker.untrackClone(ownerUUID, entity.getUUID())) {
+                // The owner's other clones keep their expiry; only the last one leaving cancels it
+                if (!tracker.hasClone(ownerUUID)) {
+                    expiryQueue.cancel(ownerUUID);
+                } else if (server != null) {
+                    reevaluateClone(server, ownerUUID);
+                }
+            }
+
+            // Unloaded clones stay registered so they can be found after a restart; only removal forgets them
+            Entity.RemovalReason reason = entity.getRemovalReason();
+            if (reason != null && reason.shouldDestroy() && server != null) {
+                CloneRegistry.get(server).unregister(entity.getUUID());
+            }
+        } catch (Exception ex) {
+            EventLog.warn(LOGGER, "leave_error", "[{}] Exception untracking clone on level leave", MOD_NAME, ex);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // 1c) Follow candidates and known clones into the chunk they enter
+    // ---------------------------------------------------------------------
+    @SubscribeEvent
+    public static void onEnteringSection(EntityEvent.EnteringSection event) {
+        if (!event.didChunkChange()) return;
+
+        Entity entity = event.getEntity();
+        if (entity.level().isClientSide()) return;
+
+        long section = event.getNewPos();
+        long chunk = ChunkPos.asLong(SectionPos.x(section), SectionPos.z(section));
+
+        // Candidates are bucketed by chunk for area queries
+        if (entity instanceof ServerPlayer player) {
+            CloneIndex.move(player.level().dimension(), player, chunk);
+        }
+
+        if (!canBeClone(entity)) return;
+
+        try {
+            // A record left pointing at the old chunk would be dropped as stale once that chunk loads without the clone
+            CompoundTag data = entity.getPersistentData();
+            MinecraftServer server = entity.getServer();
+            if (server == null || !data.getBoolean(KEY_CLONE_MARK) || !data.hasUUID(KEY_OWNER)) return;
+
+            CloneRegistry registry = CloneRegistry.get(server);
+            if (registry.getRecord(entity.getUUID()) != null) {
+                registry.register(entity.getUUID(), data.getUUID(KEY_OWNER), entity.level().dimension(),
+                        chunk, entity.level().getGameTime());
+            }
+        } catch (Exception ex) {
+            EventLog.warn(LOGGER, "move_error", "[{}] Exception updating clone position", MOD_NAME, ex);
         }
     }
 
@@ -105,53 +226,45 @@ public class DeathDetangler {
         Entity entity = event.getEntity();
 
         try {
-            CompoundTag data = entity.getPersistentData();
-            if (data.getBoolean(KEY_CLONE_MARK)
-                    || data.getBoolean(KEY_IS_REVIVAL_CLONE)
-                    || entity.getTags().contains("revival_in_progress")) {
+            // The marker is the fast path; an entity it missed (attached too late, or not set yet) still carries
+            // the persistent data and tags the join hook and Hardcore Revival leave
+            RevivalMarker marker = RevivalMarker.get(entity);
+            if ((marker != null && marker.isClone()) || CloneHeuristics.isMarkedClone(entity)) {
 
                 if (shouldLog()) {
-                    LOGGER.debug("[{}] Blocking death event for HC Revival clone: {}", MOD_NAME, entity.getUUID());
+                    EventLog.debug(LOGGER, "death_blocked", "[{}] Blocking death event for HC Revival clone: {}", MOD_NAME, entity.getUUID());
                 }
                 event.setCanceled(true);
+                DeathDetanglerMetrics.recordDeathCancelled();
                 return;
             }
 
             // If it's the real player and they're flagged "in revival", we let Hardcore Revival handle it.
-            if (entity instanceof Player player && playersInRevival.contains(player.getUUID())) {
+            if (entity instanceof Player player && tracker.isInRevival(player.getUUID())) {
                 if (shouldLog()) {
-                    LOGGER.debug("[{}] Player {} in revival state; letting Hardcore Revival handle death.",
+                    EventLog.debug(LOGGER, "death_passed", "[{}] Player {} in revival state; letting Hardcore Revival handle death.",
                             MOD_NAME, player.getUUID());
                 }
             }
         } catch (Exception ex) {
-            LOGGER.warn("[{}] Exception in onLivingDeath", MOD_NAME, ex);
+            EventLog.warn(LOGGER, "death_error", "[{}] Exception in onLivingDeath", MOD_NAME, ex);
         }
     }
 
     // ---------------------------------------------------------------------
-    // 3) Mark clones on capability attach (so Curios & co. can detect them)
+    // 3) Attach the revival marker (so Curios & co. can detect clones via DeathDetanglerApi)
+    //    Entities are attached before their NBT is loaded; the join hook sets the flag
     // ---------------------------------------------------------------------
     @SubscribeEvent(priority = EventPriority.HIGH)
     public static void onAttachCapabilities(AttachCapabilitiesEvent<Entity> event) {
         Entity entity = event.getObject();
 
         try {
-            CompoundTag data = entity.getPersistentData();
-            if (data.getBoolean(KEY_CLONE_MARK) || data.getBoolean(KEY_IS_REVIVAL_CLONE)) {
-                if (shouldLog()) {
-                    LOGGER.debug("[{}] Marking entity {} as revival clone for capabilities", MOD_NAME, entity.getUUID());
-                }
-                data.putBoolean(KEY_IS_REVIVAL_CLONE, true);
-
-                // Optional: add a tiny marker capability if other mods are updated to read it.
-                // event.addCapability(
-                //     new ResourceLocation("death_detangler", "revival_marker"),
-                //     new DummyCapabilityProvider()
-                // );
+            if (canBeClone(entity)) {
+                event.addCapability(REVIVAL_MARKER_ID, new RevivalMarkerProvider());
             }
         } catch (Exception ex) {
-            LOGGER.warn("[{}] Exception in onAttachCapabilities", MOD_NAME, ex);
+            EventLog.warn(LOGGER, "capability_error", "[{}] Exception in onAttachCapabilities", MOD_NAME, ex);
         }
     }
 
@@ -164,22 +277,27 @@ public class DeathDetangler {
         UUID playerUUID = newPlayer.getUUID();
 
         if (shouldLog()) {
-            LOGGER.info("[{}] Player clone event - UUID: {}, wasDeath: {}",
+            EventLog.info(LOGGER, "player_clone", "[{}] Player clone event - UUID: {}, wasDeath: {}",
                     MOD_NAME, playerUUID, event.isWasDeath());
         }
 
         try {
-            Entity clone = activeClones.remove(playerUUID);
-            if (clone != null && !clone.isRemoved()) {
-                if (shouldLog()) {
-                    LOGGER.info("[{}] Discarding HC Revival clone for player: {}", MOD_NAME, playerUUID);
+            MinecraftServer server = newPlayer.getServer();
+            if (server != null) {
+                // Every clone the player left behind, not just the latest one
+                for (Entity clone : tracker.release(server, playerUUID)) {
+                    if (shouldLog()) {
+                        EventLog.info(LOGGER, "clone_discarded_respawn", "[{}] Discarding HC Revival clone {} for player: {}",
+                                MOD_NAME, clone.getUUID(), playerUUID);
+                    }
+                    clone.discard();
                 }
-                clone.discard();
             }
         } catch (Exception ex) {
-            LOGGER.warn("[{}] Exception removing clone on player clone event", MOD_NAME, ex);
+            EventLog.warn(LOGGER, "player_clone_error", "[{}] Exception removing clone on player clone event", MOD_NAME, ex);
         } finally {
-            playersInRevival.remove(playerUUID);
+            expiryQueue.cancel(playerUUID);
+            tracker.remove(playerUUID);
             newPlayer.getPersistentData().remove(KEY_IN_REVIVAL);
             newPlayer.getPersistentData().remove(KEY_IS_REVIVAL_CLONE);
         }
@@ -191,64 +309,88 @@ public class DeathDetangler {
     @SubscribeEvent
     public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
         UUID playerUUID = event.getEntity().getUUID();
+        TotemSlotIndex.forget(playerUUID);
+        // Clones of this player may be orphans now; the next periodic pass must not be skipped
+        CloneIndex.markChanged();
         try {
-            Entity clone = activeClones.remove(playerUUID);
-            if (clone != null && !clone.isRemoved()) {
-                if (shouldLog()) {
-                    LOGGER.info("[{}] Discarding HC Revival clone for player {} on logout", MOD_NAME, playerUUID);
+            MinecraftServer server = event.getEntity().getServer();
+            if (server != null) {
+                for (Entity clone : tracker.release(server, playerUUID)) {
+                    if (shouldLog()) {
+                        EventLog.info(LOGGER, "clone_discarded_logout", "[{}] Discarding HC Revival clone {} for player {} on logout",
+                                MOD_NAME, clone.getUUID(), playerUUID);
+                    }
+                    clone.discard();
                 }
-                clone.discard();
             }
         } catch (Exception ex) {
-            LOGGER.warn("[{}] Exception removing clone on logout", MOD_NAME, ex);
+            EventLog.warn(LOGGER, "logout_error", "[{}] Exception removing clone on logout", MOD_NAME, ex);
         } finally {
-            playersInRevival.remove(playerUUID);
+            expiryQueue.cancel(playerUUID);
+            tracker.remove(playerUUID);
         }
     }
 
     // ---------------------------------------------------------------------
-    // 6) Periodic cleanup (every ~5 seconds)
+    // 6) Re-check a clone whenever its owner's state changes
     // ---------------------------------------------------------------------
     @SubscribeEvent
-    public static void onServerTick(TickEvent.ServerTickEvent event) {
-        if (event.phase != TickEvent.Phase.END) return;
+    public static void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
+        onOwnerStateChanged(event.getEntity());
+    }
 
-        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
-        if (server == null) return;
+    @SubscribeEvent
+    public static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        onOwnerStateChanged(event.getEntity());
+    }
 
-        long tick = server.getTickCount();
-        if (tick % 100L != 0L) return; // every 100 ticks ~5s
+    @SubscribeEvent
+    public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        onOwnerStateChanged(event.getEntity());
+    }
 
-        Iterator<Map.Entry<UUID, Entity>> it = activeClones.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<UUID, Entity> entry = it.next();
-            UUID playerUUID = entry.getKey();
-            Entity clone = entry.getValue();
+    /**
+     * Called when Hardcore Revival knocks a player out. Keeps their clone alive while downed.
+     */
+    public static void onOwnerKnockedOut(ServerPlayer player) {
+        player.getPersistentData().putBoolean(KEY_IN_REVIVAL, true);
+        tracker.setInRevival(player.getUUID(), true);
+        onOwnerStateChanged(player);
+    }
 
-            try {
-                if (clone == null || clone.isRemoved()) {
-                    it.remove();
-                    continue;
-                }
+    /**
+     * Called when Hardcore Revival revives a player. Their clone becomes orphaned.
+     */
+    public static void onOwnerRevived(ServerPlayer player) {
+        player.getPersistentData().remove(KEY_IN_REVIVAL);
+        tracker.setInRevival(player.getUUID(), false);
+        onOwnerStateChanged(player);
+    }
 
-                ServerPlayer player = server.getPlayerList().getPlayer(playerUUID);
-                boolean stillInRevival = player != null
-                        && player.getPersistentData().getBoolean(KEY_IN_REVIVAL);
+    private static void onOwnerStateChanged(Player player) {
+        if (tracker.cloneCount() == 0) return;
 
-                if (player == null || !stillInRevival) {
-                    if (shouldLog()) {
-                        LOGGER.info("[{}] Discarding orphaned HC Revival clone for player: {}", MOD_NAME, playerUUID);
-                    }
-                    clone.discard();
-                    it.remove();
-                    playersInRevival.remove(playerUUID);
-                }
-            } catch (Exception ex) {
-                LOGGER.warn("[{}] Exception during periodic clone cleanup for {}", MOD_NAME, playerUUID, ex);
-                it.remove();
-                playersInRevival.remove(playerUUID);
-            }
+        MinecraftServer server = player.getServer();
+        if (server != null) {
+            reevaluateClone(server, player.getUUID());
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // 6b) Expire orphaned clones exactly when their deadline is reached
+    // ---------------------------------------------------------------------
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        if (!loadSweepQueue.isEmpty()) {
+            drainLoadSweepQueue(event.getServer());
         }
+
+        long tick = event.getServer().getTickCount();
+        if (!expiryQueue.hasDue(tick)) return;
+
+        expiryQueue.pollDue(tick, ownerUUID -> expireClone(event.getServer(), ownerUUID));
     }
 
     // ---------------------------------------------------------------------
@@ -259,45 +401,115 @@ public class DeathDetangler {
         if (shouldLog()) {
             LOGGER.info("[{}] Server stopping, clearing clone tracking maps.", MOD_NAME);
         }
-        activeClones.clear();
-        playersInRevival.clear();
+        tracker.clear();
+        expiryQueue.clear();
+        loadSweepQueue.clear();
+        CloneIndex.clear();
+        TotemSlotIndex.clear();
     }
 
     // ---------------------------------------------------------------------
-    // Helper: decide whether an entity is a Hardcore Revival "downed" clone
+    // Helper: a clone is orphaned once its owner is offline or no longer in revival
     // ---------------------------------------------------------------------
-    private static boolean isHardcoreRevivalClone(Entity entity) {
-        if (entity == null) return false;
+    /**
+     * Checks whether a clone's owner has left revival, so the clone is no longer needed.
+     *
+     * @param server The Minecraft server instance
+     * @param ownerUUID The owning player's UUID
+     * @return true if the owner is offline or not in revival
+     */
+    public static boolean isOwnerGone(MinecraftServer server, UUID ownerUUID) {
+        ServerPlayer player = server.getPlayerList().getPlayer(ownerUUID);
+        return player == null || !player.getPersistentData().getBoolean(KEY_IN_REVIVAL);
+    }
 
-        try {
-            CompoundTag data = entity.getPersistentData();
-            if (data != null) {
-                if (data.contains("HardcoreRevival")
-                        || data.contains("is_downed")
-                        || data.contains("isRevivalClone")
-                        || data.contains("downed")
-                        || data.contains("revive_clone")) {
-                    return true;
-                }
-            }
+    // ---------------------------------------------------------------------
+    // Helper: schedule or cancel a clone's expiry based on its owner's state
+    // ---------------------------------------------------------------------
+    private static void reevaluateClone(MinecraftServer server, UUID ownerUUID) {
+        if (!tracker.hasClone(ownerUUID)) {
+            expiryQueue.cancel(ownerUUID);
+            return;
+        }
+
+        if (!isOwnerGone(server, ownerUUID)) {
+            expiryQueue.cancel(ownerUUID);
+        } else if (!expiryQueue.isScheduled(ownerUUID)) {
+            expiryQueue.schedule(ownerUUID, server.getTickCount() + Config.orphanGraceTicks);
+        }
+    }
 
-            ResourceLocation entityTypeKey = ForgeRegistries.ENTITY_TYPES.getKey(entity.getType());
-            if (entityTypeKey != null) {
-                String reg = entityTypeKey.toString().toLowerCase();
-                if (reg.contains("reviv") || reg.contains("hardcorerevival")) {
-                    return true;
+    // ---------------------------------------------------------------------
+    // Helper: discard orphaned clones found while their chunk was loading
+    // ---------------------------------------------------------------------
+    private static void drainLoadSweepQueue(MinecraftServer server) {
+        Entity clone;
+        while ((clone = loadSweepQueue.poll()) != null) {
+            try {
+                if (clone.isRemoved()) continue;
+
+                // The owner may have come back between the chunk load and this tick
+                UUID ownerUUID = getCloneOwnerUUID(clone);
+                if (ownerUUID != null && !isOwnerGone(server, ownerUUID)) continue;
+
+                if (shouldLog()) {
+                    EventLog.info(LOGGER, "clone_swept", "[{}] Discarding orphaned HC Revival clone {} loaded with its chunk",
+                            MOD_NAME, clone.getUUID());
                 }
+                clone.discard();
+                DeathDetanglerMetrics.recordLoadSweep();
+            } catch (Exception ex) {
+                EventLog.warn(LOGGER, "sweep_error", "[{}] Exception while sweeping clone {}", MOD_NAME, clone.getUUID(), ex);
             }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Helper: discard every clone of an owner whose expiry deadline has been reached
+    // ---------------------------------------------------------------------
+    private static void expireClone(MinecraftServer server, UUID ownerUUID) {
+        try {
+            // The owner may have been knocked out again since the expiry was scheduled
+            if (tracker.hasClone(ownerUUID) && !isOwnerGone(server, ownerUUID)) return;
 
-            if (entity instanceof Player player) {
-                if (player.getPersistentData().contains(KEY_OWNER)
-                        || player.getPersistentData().getBoolean(KEY_IS_REVIVAL_CLONE)) {
-                    return true;
+            for (Entity clone : tracker.release(server, ownerUUID)) {
+                if (shouldLog()) {
+                    EventLog.info(LOGGER, "clone_expired", "[{}] Discarding orphaned HC Revival clone {} for player: {}",
+                            MOD_NAME, clone.getUUID(), ownerUUID);
                 }
+                clone.discard();
             }
+        } catch (Exception ex) {
+            EventLog.warn(LOGGER, "expire_error", "[{}] Exception while expiring clone for {}", MOD_NAME, ownerUUID, ex);
+            tracker.remove(ownerUUID);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Helper: only players and revival entity types can ever be clones
+    // ---------------------------------------------------------------------
+    private static boolean canBeClone(Entity entity) {
+        return entity instanceof Player
+                || EntityTypeClassifier.classify(entity.getType()) != EntityTypeClassifier.Kind.OTHER;
+    }
+
+    // ---------------------------------------------------------------------
+    // Helper: decide whether an entity is a Hardcore Revival "downed" clone
+    // ---------------------------------------------------------------------
+    private static boolean isHardcoreRevivalClone(Entity entity) {
+        if (entity == null) return false;
+
+        try {
+            // One identity lookup settles every ordinary entity type
+            EntityType<?> type = entity.getType();
+            if (!(entity instanceof Player)
+                    && EntityTypeClassifier.classify(type) == EntityTypeClassifier.Kind.OTHER) return false;
+
+            // Type, persistent data and tag rules add into one score against the configured threshold
+            return CloneHeuristics.hasCloneMarkers(entity, EntityTypeClassifier.typeScore(type));
         } catch (Throwable t) {
             if (shouldLog()) {
-                LOGGER.debug("[{}] Error while checking isHardcoreRevivalClone", MOD_NAME, t);
+                EventLog.debug(LOGGER, "classify_error", "[{}] Error while checking isHardcoreRevivalClone", MOD_NAME, t);
             }
         }
 
@@ -321,57 +533,20 @@ public class DeathDetangler {
             }
         } catch (Throwable t) {
             if (shouldLog()) {
-                LOGGER.debug("[{}] Error extracting clone owner UUID", MOD_NAME, t);
+                EventLog.debug(LOGGER, "owner_error", "[{}] Error extracting clone owner UUID", MOD_NAME, t);
             }
         }
 
         return null;
     }
 
-    // ---------------------------------------------------------------------
-    // Helper: check if a player is currently knocked out by Hardcore Revival
-    // ---------------------------------------------------------------------
-    private static boolean isPlayerKnockedOut(ServerPlayer player) {
-        if (player == null) return false;
-
-        try {
-            // Check persistent data for Hardcore Revival knockout markers
-            CompoundTag data = player.getPersistentData();
-            if (data.contains("HardcoreRevival")
-                    || data.contains("is_downed")
-                    || data.contains("isKnockedOut")
-                    || data.contains("knocked_out")
-                    || data.getBoolean("HardcoreRevivalKnockedOut")) {
-                return true;
-            }
-
-            // Check if player has the "knocked_out" tag
-            if (player.getTags().contains("knocked_out") 
-                    || player.getTags().contains("hardcorerevival_knocked_out")) {
-                return true;
-            }
-
-            // Check if player is in revival state (tracked by us)
-            if (playersInRevival.contains(player.getUUID())) {
-                return true;
-            }
-        } catch (Throwable t) {
-            if (shouldLog()) {
-                LOGGER.debug("[{}] Error checking if player is knocked out", MOD_NAME, t);
-            }
-        }
-
-        return false;
-    }
+    // Field-backed provider of the revival marker; the marker is created on first lookup
+    private static class RevivalMarkerProvider implements ICapabilityProvider {
+        private final LazyOptional<RevivalMarker> marker = LazyOptional.of(RevivalMarker::new);
 
-    // Optional marker capability provider (not strictly needed yet)
-    private static class DummyCapabilityProvider implements ICapabilityProvider {
         @Override
-        public <T> net.minecraftforge.common.util.LazyOptional<T> getCapability(
-                net.minecraftforge.common.capabilities.Capability<T> cap,
-                net.minecraft.core.Direction side
-        ) {
-            return net.minecraftforge.common.util.LazyOptional.empty();
+        public <T> LazyOptional<T> getCapability(Capability<T> cap, net.minecraft.core.Direction side) {
+            return RevivalMarker.CAPABILITY.orEmpty(cap, marker);
         }
     }
 }
@@ -1,11 +1,14 @@
 package uk.creatopia.death_detangler;
 
 import com.mojang.logging.LogUtils;
+import net.minecraft.server.MinecraftServer;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.common.capabilities.RegisterCapabilitiesEvent;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.server.ServerStartedEvent;
 import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModLoadingContext;
@@ -14,8 +17,24 @@ import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import org.slf4j.Logger;
+import uk.creatopia.death_detangler.api.RevivalMarker;
 import uk.creatopia.death_detangler.command.DeathDetanglerCommand;
+import uk.creatopia.death_detangler.history.ScanHistory;
+import uk.creatopia.death_detangler.lifecycle.CloneRegistry;
+import uk.creatopia.death_detangler.lifecycle.HardcoreRevivalEvents;
+import uk.creatopia.death_detangler.lifecycle.HardcoreRevivalWakeup;
+import uk.creatopia.death_detangler.logging.EventLog;
+import uk.creatopia.death_detangler.metrics.MetricsExporter;
+import uk.creatopia.death_detangler.report.ReportExecutor;
+import uk.creatopia.death_detangler.scan.CloneDeltaTracker;
+import uk.creatopia.death_detangler.scan.CloneIndex;
+import uk.creatopia.death_detangler.scan.CloneRemovalQueue;
+import uk.creatopia.death_detangler.scan.ScanCache;
+import uk.creatopia.death_detangler.scan.ScanDelta;
 import uk.creatopia.death_detangler.scan.CloneScanner;
+import uk.creatopia.death_detangler.scan.ScanPass;
+import uk.creatopia.death_detangler.scan.ScanResult;
+import uk.creatopia.death_detangler.util.EntityTypeClassifier;
 
 // The value here should match an entry in the META-INF/mods.toml file
 @Mod(DeathDetanglerMain.MODID)
@@ -29,12 +48,22 @@ public class DeathDetanglerMain {
     // Periodic cleanup counter
     private static int tickCounter = 0;
 
+    // Periodic cleanup pass in progress, resumed every tick until finished
+    private static ScanPass activePass = null;
+
+    // Candidate index generation when the last finished pass started, and what it found
+    private static long lastPassGeneration = -1;
+    private static int lastPassFound = 0;
+
     public DeathDetanglerMain() {
         IEventBus modEventBus = FMLJavaModLoadingContext.get().getModEventBus();
 
         // Register the commonSetup method for modloading
         modEventBus.addListener(this::commonSetup);
 
+        // Register the revival marker capability
+        modEventBus.addListener(this::registerCapabilities);
+
         // Register ourselves for server and other game events we are interested in
         MinecraftForge.EVENT_BUS.register(this);
 
@@ -44,6 +73,22 @@ public class DeathDetanglerMain {
 
     private void commonSetup(final FMLCommonSetupEvent event) {
         LOGGER.info("Death Detangler mod loaded");
+
+        // Registries are frozen by now, so entity types can be classified once up front
+        event.enqueueWork(EntityTypeClassifier::bake);
+
+        try {
+            HardcoreRevivalEvents.register();
+        } catch (LinkageError e) {
+            LOGGER.warn("Could not hook Hardcore Revival events; orphaned clones will only be found by periodic scans", e);
+        }
+
+        // Resolve the totem wake-up method now, so a missing one is reported at startup rather than on first knockout
+        HardcoreRevivalWakeup.selfTest();
+    }
+
+    private void registerCapabilities(final RegisterCapabilitiesEvent event) {
+        event.register(RevivalMarker.class);
     }
 
     // You can use SubscribeEvent and let the Event Bus discover methods to call
@@ -57,13 +102,26 @@ public class DeathDetanglerMain {
      */
     @SubscribeEvent
     public void onServerStarted(ServerStartedEvent event) {
+        ScanHistory.open(event.getServer());
+
         if (!Config.autoRunOnStart) {
             return;
         }
 
         LOGGER.info("[DeathDetangler] cleanup_start");
-        int cleaned = CloneScanner.scanAndFix(event.getServer(), true);
-        LOGGER.info("[DeathDetangler] removed={}", cleaned);
+
+        // Once clones have been recorded for this world, only they need checking; otherwise fall back to a full scan
+        CloneRegistry registry = CloneRegistry.get(event.getServer());
+        ScanResult result;
+        if (registry.isPersisted()) {
+            LOGGER.info("[DeathDetangler] Checking {} known clone(s) from the clone registry", registry.size());
+            result = CloneScanner.scanKnownClones(event.getServer(), true);
+        } else {
+            result = CloneScanner.scanWithDetails(event.getServer(), true);
+        }
+        ScanHistory.append(result, true, "startup");
+        int cleaned = result.getTotalFound();
+        LOGGER.info("[DeathDetangler] removed={} deferred={}", cleaned, result.getDeferredRemovals());
         LOGGER.info("[DeathDetangler] cleanup_end");
 
         if (cleaned > 0) {
@@ -73,10 +131,26 @@ public class DeathDetanglerMain {
 
     /**
      * Periodic cleanup timer.
+     * Each pass is time-sliced: it runs for at most {@link Config#scanTickBudgetMicros} per tick
+     * and resumes on the next tick until every dimension has been visited.
+     * Tracked clones are expired by {@link DeathDetangler} as soon as they become orphaned, so this
+     * pass is only a safety net and is skipped while no player entity has joined or left, and no player has logged out,
+     * since a clean pass.
      */
     @SubscribeEvent
     public void onServerTick(TickEvent.ServerTickEvent event) {
         if (event.phase != TickEvent.Phase.END) return;
+
+        MetricsExporter.tick(event.getServer());
+
+        // Removals deferred by earlier scans, capped per tick
+        CloneRemovalQueue.drain(event.getServer());
+
+        if (activePass != null) {
+            stepPeriodicPass(event.getServer());
+            return;
+        }
+
         if (Config.cleanIntervalTicks <= 0) return;
 
         tickCounter++;
@@ -84,18 +158,72 @@ public class DeathDetanglerMain {
         if (tickCounter >= Config.cleanIntervalTicks) {
             tickCounter = 0;
 
-            LOGGER.info("[DeathDetangler] cleanup_start");
-            int removed = CloneScanner.scanAndFix(
-                event.getServer(),
-                Config.autoRemove
-            );
-            LOGGER.info("[DeathDetangler] removed={}", removed);
-            LOGGER.info("[DeathDetangler] cleanup_end");
-
-            if (Config.verboseLogging && removed > 0) {
-                LOGGER.info("Periodic cleanup removed {} orphan clones.", removed);
+            long generation = CloneIndex.getGeneration();
+            if (generation == lastPassGeneration && lastPassFound == 0) {
+                if (Config.verboseLogging) {
+                    EventLog.info(LOGGER, "cleanup_skipped", "[DeathDetangler] cleanup_skipped (no entity changes since last clean pass)");
+                }
+                return;
             }
+
+            EventLog.info(LOGGER, "cleanup_start", "[DeathDetangler] cleanup_start");
+            lastPassGeneration = generation;
+            activePass = new ScanPass(event.getServer(), Config.autoRemove);
+            stepPeriodicPass(event.getServer());
+        }
+    }
+
+    private static void stepPeriodicPass(MinecraftServer server) {
+        if (!activePass.step(Config.scanTickBudgetMicros * 1_000L)) {
+            return;
+        }
+
+        ScanResult result = activePass.getResult();
+        int removed = result.getTotalFound();
+        activePass = null;
+        ScanHistory.append(result, Config.autoRemove, "periodic");
+        lastPassFound = removed;
+
+        // A pass that removed nothing can answer the next scan or report command; stamped with the generation
+        // it started on, it is only served if nothing joined or left while it was spread over several ticks
+        if (Config.autoRemove && removed > 0) {
+            ScanCache.invalidate();
+        } else {
+            ScanCache.store(server, result, lastPassGeneration);
+        }
+
+        EventLog.info(LOGGER, "cleanup_removed", "[DeathDetangler] removed={} deferred={}", removed, result.getDeferredRemovals());
+        ScanDelta delta = result.getDelta();
+        if (delta != null && (!delta.isUnchanged() || Config.verboseLogging)) {
+            EventLog.info(LOGGER, "cleanup_delta", "[DeathDetangler] added={} resolved={} still_present={} oldest={}s",
+                    delta.getAdded().size(), delta.getResolved().size(), delta.getStillPresent(), delta.getOldestAgeTicks() / 20);
+        }
+        EventLog.info(LOGGER, "cleanup_end", "[DeathDetangler] cleanup_end");
+
+        if (Config.verboseLogging && removed > 0) {
+            EventLog.info(LOGGER, "cleanup_summary", "Periodic cleanup removed {} orphan clones.", removed);
+        }
+    }
+
+    /**
+     * Drops any unfinished periodic pass and queued removals so they can't outlive the server,
+     * and lets pending report, history and metrics writes finish.
+     */
+    @SubscribeEvent
+    public void onServerStopping(ServerStoppingEvent event) {
+        if (Config.metricsExportEnabled) {
+            MetricsExporter.export(event.getServer());
         }
+        MetricsExporter.reset();
+        ScanHistory.close();
+        ReportExecutor.shutdown();
+        CloneRemovalQueue.clear();
+        ScanCache.invalidate();
+        CloneDeltaTracker.clear();
+        activePass = null;
+        tickCounter = 0;
+        lastPassGeneration = -1;
+        lastPassFound = 0;
     }
 
     /**
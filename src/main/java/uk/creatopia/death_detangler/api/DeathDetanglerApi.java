@@ -0,0 +1,22 @@
+package uk.creatopia.death_detangler.api;
+
+import net.minecraft.world.entity.Entity;
+
+/**
+ * Public queries for other mods, e.g. corpse, grave or curios mods that should skip revival clones.
+ * Safe to call from any server-side event handler.
+ */
+public class DeathDetanglerApi {
+
+    /**
+     * Checks whether an entity is a Hardcore Revival clone rather than a real player or a real death.
+     * Reads a single capability field, without touching the entity's NBT.
+     *
+     * @param entity The entity to check
+     * @return true if the entity is a revival clone
+     */
+    public static boolean isRevivalClone(Entity entity) {
+        RevivalMarker marker = RevivalMarker.get(entity);
+        return marker != null && marker.isClone();
+    }
+}
@@ -0,0 +1,47 @@
+package uk.creatopia.death_detangler.api;
+
+import net.minecraft.world.entity.Entity;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityManager;
+import net.minecraftforge.common.capabilities.CapabilityToken;
+
+/**
+ * Capability that marks an entity as a Hardcore Revival clone.
+ * <p>
+ * Attached to players and revival entity types only; every other entity has no marker at all,
+ * so a lookup on an ordinary mob ends at the capability check. The flag is set by Death Detangler
+ * when the entity joins a level, from the same persistent data marks it has always written,
+ * so it is not saved separately.
+ */
+public class RevivalMarker {
+
+    public static final Capability<RevivalMarker> CAPABILITY = CapabilityManager.get(new CapabilityToken<>() {});
+
+    private boolean clone = false;
+
+    /**
+     * Gets the marker of an entity.
+     *
+     * @param entity The entity
+     * @return The entity's marker, or null if it can't be a clone and has none
+     */
+    public static RevivalMarker get(Entity entity) {
+        return entity.getCapability(CAPABILITY).orElse(null);
+    }
+
+    /**
+     * @return true if the entity is a revival clone
+     */
+    public boolean isClone() {
+        return clone;
+    }
+
+    /**
+     * Sets whether the entity is a revival clone. Only Death Detangler should call this.
+     *
+     * @param clone Whether the entity is a revival clone
+     */
+    public void setClone(boolean clone) {
+        this.clone = clone;
+    }
+}
@@ -1,22 +1,39 @@
 package uk.creatopia.death_detangler.command;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.DimensionArgument;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.commands.arguments.coordinates.Vec3Argument;
+import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import uk.creatopia.death_detangler.history.ScanHistory;
+import uk.creatopia.death_detangler.lifecycle.HardcoreRevivalWakeup;
+import uk.creatopia.death_detangler.metrics.DeathDetanglerMetrics;
+import uk.creatopia.death_detangler.metrics.LatencyHistogram;
 import uk.creatopia.death_detangler.scan.CloneScanner;
+import uk.creatopia.death_detangler.scan.ScanCache;
+import uk.creatopia.death_detangler.scan.ScanDelta;
 import uk.creatopia.death_detangler.scan.ScanResult;
 import uk.creatopia.death_detangler.report.ReportGenerator;
 
-import java.io.IOException;
+import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 /**
  * Command registration for Death Detangler.
- * Provides /death_detangler scan, run, dryrun, report, and dump commands.
+ * Provides /death_detangler scan, run, dryrun, report, dump, history, and metrics commands.
+ * scan and run also take {@code near <pos> <radius>} and {@code area <from> <to>} to check only part of the current level.
  */
 public class DeathDetanglerCommand {
 
@@ -25,30 +42,115 @@ public class DeathDetanglerCommand {
             Commands.literal("death_detangler")
                 .requires(src -> src.hasPermission(2))
                 .then(Commands.literal("scan")
-                    .executes(ctx -> scan(ctx, false)))
+                    .executes(ctx -> scan(ctx, false))
+                    .then(near(false))
+                    .then(area(false)))
                 .then(Commands.literal("dryrun")
                     .executes(ctx -> scan(ctx, false)))
                 .then(Commands.literal("run")
-                    .executes(ctx -> scan(ctx, true)))
+                    .executes(ctx -> scan(ctx, true))
+                    .then(near(true))
+                    .then(area(true)))
                 .then(Commands.literal("report")
                     .executes(DeathDetanglerCommand::report))
                 .then(Commands.literal("dump")
                     .executes(DeathDetanglerCommand::dump))
+                .then(Commands.literal("history")
+                    .executes(ctx -> history(ctx, 24, null))
+                    .then(Commands.argument("hours", IntegerArgumentType.integer(1))
+                        .executes(ctx -> history(ctx, IntegerArgumentType.getInteger(ctx, "hours"), null))
+                        .then(Commands.argument("dimension", DimensionArgument.dimension())
+                            .executes(ctx -> history(
+                                ctx,
+                                IntegerArgumentType.getInteger(ctx, "hours"),
+                                DimensionArgument.getDimension(ctx, "dimension").dimension().location().toString()
+                            )))))
+                .then(Commands.literal("metrics")
+                    .executes(DeathDetanglerCommand::metrics))
         );
     }
 
     private static int scan(CommandContext<CommandSourceStack> ctx, boolean applyFix) {
-        ScanResult result = CloneScanner.scanWithDetails(ctx.getSource().getServer(), applyFix);
+        MinecraftServer server = ctx.getSource().getServer();
+
+        // Removing always needs a fresh pass; a dry run can reuse a recent one
+        ScanResult result;
+        if (applyFix) {
+            result = CloneScanner.scanWithDetails(server, true);
+            ScanCache.invalidate();
+            ScanHistory.append(result, true, "command");
+        } else {
+            result = ScanCache.get(server);
+        }
+        int found = result.getTotalFound();
+
+        if (applyFix) {
+            int deferred = result.getDeferredRemovals();
+            String message = deferred > 0
+                ? "Death Detangler found " + found + " orphan clone(s); " + deferred + " removal(s) deferred to the following ticks."
+                : "Death Detangler removed " + found + " orphan clone(s).";
+            ctx.getSource().sendSuccess(
+                () -> Component.literal(message),
+                true
+            );
+        } else {
+            ctx.getSource().sendSuccess(
+                () -> Component.literal("Death Detangler detected " + found + " potential clone(s)" + cacheNote(server) + "."),
+                false
+            );
+        }
+
+        return found;
+    }
+
+    private static LiteralArgumentBuilder<CommandSourceStack> near(boolean applyFix) {
+        return Commands.literal("near")
+            .then(Commands.argument("pos", Vec3Argument.vec3())
+                .then(Commands.argument("radius", IntegerArgumentType.integer(1))
+                    .executes(ctx -> {
+                        Vec3 center = Vec3Argument.getVec3(ctx, "pos");
+                        int radius = IntegerArgumentType.getInteger(ctx, "radius");
+                        ScanResult result = CloneScanner.scanNear(ctx.getSource().getServer(), ctx.getSource().getLevel(),
+                                center, radius, applyFix);
+                        String where = String.format("within %d blocks of %.1f %.1f %.1f", radius, center.x, center.y, center.z);
+                        return areaScan(ctx, applyFix, result, where);
+                    })));
+    }
+
+    private static LiteralArgumentBuilder<CommandSourceStack> area(boolean applyFix) {
+        return Commands.literal("area")
+            .then(Commands.argument("from", BlockPosArgument.blockPos())
+                .then(Commands.argument("to", BlockPosArgument.blockPos())
+                    .executes(ctx -> {
+                        BlockPos from = BlockPosArgument.getBlockPos(ctx, "from");
+                        BlockPos to = BlockPosArgument.getBlockPos(ctx, "to");
+                        ScanResult result = CloneScanner.scanArea(ctx.getSource().getServer(), ctx.getSource().getLevel(),
+                                new AABB(from).minmax(new AABB(to)), applyFix);
+                        String where = "between " + from.toShortString() + " and " + to.toShortString();
+                        return areaScan(ctx, applyFix, result, where);
+                    })));
+    }
+
+    private static int areaScan(CommandContext<CommandSourceStack> ctx, boolean applyFix, ScanResult result, String where) {
         int found = result.getTotalFound();
 
         if (applyFix) {
+            if (found > 0) {
+                ScanCache.invalidate();
+            }
+            ScanHistory.append(result, true, "area");
+
+            int deferred = result.getDeferredRemovals();
+            String message = deferred > 0
+                ? "Death Detangler found " + found + " orphan clone(s) " + where + "; " + deferred + " removal(s) deferred to the following ticks."
+                : "Death Detangler removed " + found + " orphan clone(s) " + where + ".";
             ctx.getSource().sendSuccess(
-                () -> Component.literal("Death Detangler removed " + found + " orphan clone(s)."),
+                () -> Component.literal(message),
                 true
             );
         } else {
             ctx.getSource().sendSuccess(
-                () -> Component.literal("Death Detangler detected " + found + " potential clone(s)."),
+                () -> Component.literal("Death Detangler detected " + found + " potential clone(s) " + where + "."),
                 false
             );
         }
@@ -57,22 +159,25 @@ public class DeathDetanglerCommand {
     }
 
     private static int report(CommandContext<CommandSourceStack> ctx) {
-        ScanResult result = CloneScanner.scanWithDetails(ctx.getSource().getServer(), false);
+        MinecraftServer server = ctx.getSource().getServer();
+        ScanResult result = ScanCache.get(server);
 
         if (result.getTotalFound() == 0) {
+            String message = appendDelta(new StringBuilder("No orphan clones detected" + cacheNote(server) + "."), result.getDelta()).toString();
             ctx.getSource().sendSuccess(
-                () -> Component.literal("No orphan clones detected."),
+                () -> Component.literal(message),
                 false
             );
             return 0;
         }
 
         // Build per-dimension report
-        StringBuilder report = new StringBuilder("Death Detangler Report:\n");
+        StringBuilder report = new StringBuilder("Death Detangler Report" + cacheNote(server) + ":\n");
         for (Map.Entry<ResourceKey<Level>, Integer> entry : result.getPerDimension().entrySet()) {
             report.append("  ").append(entry.getKey().location()).append(": ").append(entry.getValue()).append("\n");
         }
         report.append("Total: ").append(result.getTotalFound());
+        appendDelta(report, result.getDelta());
 
         ctx.getSource().sendSuccess(
             () -> Component.literal(report.toString()),
@@ -83,26 +188,139 @@ public class DeathDetanglerCommand {
     }
 
     private static int dump(CommandContext<CommandSourceStack> ctx) {
-        ScanResult result = CloneScanner.scanWithDetails(ctx.getSource().getServer(), false);
+        CommandSourceStack source = ctx.getSource();
+        MinecraftServer server = source.getServer();
 
-        try {
-            java.nio.file.Path reportPath = ReportGenerator.generateReport(
-                ctx.getSource().getServer(),
-                result
-            );
+        // Scan on the server thread (or reuse a recent scan), then serialize and write the snapshot on the I/O thread
+        ScanResult result = ScanCache.get(server);
 
-            ctx.getSource().sendSuccess(
-                () -> Component.literal("Report saved to: " + reportPath.toString()),
-                true
-            );
+        ReportGenerator.generateReportAsync(server, result).whenComplete((reportPath, error) ->
+            server.execute(() -> {
+                if (error == null) {
+                    source.sendSuccess(
+                        () -> Component.literal("Report saved to: " + reportPath.toString()),
+                        true
+                    );
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    source.sendFailure(
+                        Component.literal("Failed to generate report: " + cause.getMessage())
+                    );
+                }
+            })
+        );
 
-            return result.getTotalFound();
-        } catch (IOException e) {
-            ctx.getSource().sendFailure(
-                Component.literal("Failed to generate report: " + e.getMessage())
-            );
-            return 0;
+        source.sendSuccess(
+            () -> Component.literal("Writing report for " + result.getTotalFound() + " clone(s)" + cacheNote(server) + "..."),
+            false
+        );
+
+        return result.getTotalFound();
+    }
+
+    private static StringBuilder appendDelta(StringBuilder report, ScanDelta delta) {
+        if (delta == null || delta.isBaseline()) return report;
+
+        report.append("\nSince previous scan: ").append(delta.getAdded().size()).append(" new, ")
+                .append(delta.getResolved().size()).append(" resolved, ")
+                .append(delta.getStillPresent()).append(" still present");
+        if (delta.getStillPresent() > 0) {
+            report.append(" (oldest ").append(delta.getOldestAgeTicks() / 20).append("s)");
         }
+        return report;
     }
-}
 
+    private static String cacheNote(MinecraftServer server) {
+        int age = ScanCache.getAge(server);
+        return age > 0 ? " (from a scan " + age / 20 + "s ago)" : "";
+    }
+
+    private static int history(CommandContext<CommandSourceStack> ctx, int hours, String dimension) {
+        CommandSourceStack source = ctx.getSource();
+        MinecraftServer server = source.getServer();
+        long since = System.currentTimeMillis() / 1000 - hours * 3600L;
+
+        // Segments are read on the I/O thread; the summary is sent back on a later tick
+        ScanHistory.query(since, dimension).whenComplete((summary, error) ->
+            server.execute(() -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    source.sendFailure(Component.literal("Failed to read scan history: " + cause.getMessage()));
+                    return;
+                }
+
+                String scope = dimension != null ? dimension : "all dimensions";
+                if (summary.getScans() == 0) {
+                    source.sendSuccess(
+                        () -> Component.literal("No scans recorded in the last " + hours + "h for " + scope + "."),
+                        false
+                    );
+                    return;
+                }
+
+                StringBuilder report = new StringBuilder("Death Detangler History (last " + hours + "h, " + scope + "):\n");
+                report.append("  Scans: ").append(summary.getScans()).append("\n");
+                report.append("  Clones found: ").append(summary.getTotalFound())
+                        .append(" (max ").append(summary.getMaxFound()).append(" in one scan)\n");
+                if (dimension == null) {
+                    report.append("  New: ").append(summary.getTotalAdded())
+                            .append(", resolved: ").append(summary.getTotalResolved()).append("\n");
+                }
+                for (Map.Entry<String, Long> entry : summary.getPerDimension().entrySet()) {
+                    report.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+                }
+                report.append("  From ").append(Instant.ofEpochSecond(summary.getFirstTimestamp()))
+                        .append(" to ").append(Instant.ofEpochSecond(summary.getLastTimestamp()));
+
+                source.sendSuccess(() -> Component.literal(report.toString()), false);
+            })
+        );
+
+        return 1;
+    }
+
+    private static int metrics(CommandContext<CommandSourceStack> ctx) {
+        StringBuilder report = new StringBuilder("Death Detangler Metrics:\n");
+        report.append("  Scans: ").append(DeathDetanglerMetrics.getScans()).append("\n");
+        report.append("  Entities visited: ").append(DeathDetanglerMetrics.getEntitiesVisited()).append("\n");
+        report.append("  Candidates classified: ").append(DeathDetanglerMetrics.getCandidatesClassified()).append("\n");
+        report.append("  Clones detected: ").append(DeathDetanglerMetrics.getClonesDetected())
+                .append(", removed: ").append(DeathDetanglerMetrics.getClonesRemoved())
+                .append(", swept on chunk load: ").append(DeathDetanglerMetrics.getLoadSweeps()).append("\n");
+        report.append("  Deaths cancelled: ").append(DeathDetanglerMetrics.getDeathsCancelled()).append("\n");
+        report.append("  Totem interceptions: ").append(DeathDetanglerMetrics.getTotemInterceptions())
+                .append(" (wake-up strategy: ").append(HardcoreRevivalWakeup.getStrategy()).append(")\n");
+        appendLatency(report, "Scan time", DeathDetanglerMetrics.getScanDuration());
+        for (Map.Entry<String, LatencyHistogram> entry : DeathDetanglerMetrics.getDimensionScanDuration().entrySet()) {
+            appendLatency(report, "  " + entry.getKey(), entry.getValue());
+        }
+        appendLatency(report, "Join hook", DeathDetanglerMetrics.getJoinHookLatency());
+
+        ctx.getSource().sendSuccess(
+            () -> Component.literal(report.toString().stripTrailing()),
+            false
+        );
+
+        return 1;
+    }
+
+    private static void appendLatency(StringBuilder report, String label, LatencyHistogram histogram) {
+        report.append("  ").append(label).append(": ");
+        if (histogram.getCount() == 0) {
+            report.append("no samples\n");
+            return;
+        }
+        report.append("n=").append(histogram.getCount())
+                .append(" p50=").append(formatNanos(histogram.getPercentile(0.5)))
+                .append(" p99=").append(formatNanos(histogram.getPercentile(0.99)))
+                .append(" max=").append(formatNanos(histogram.getMax()))
+                .append("\n");
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000L) {
+            return String.format("%.1fms", nanos / 1_000_000.0);
+        }
+        return String.format("%.1fus", nanos / 1_000.0);
+    }
+}
@@ -0,0 +1,458 @@
+package uk.creatopia.death_detangler.history;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.mojang.logging.LogUtils;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import uk.creatopia.death_detangler.Config;
+import uk.creatopia.death_detangler.report.ReportExecutor;
+import uk.creatopia.death_detangler.scan.ScanDelta;
+import uk.creatopia.death_detangler.scan.ScanResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Append-only history of scan results, stored as rotating NDJSON segments in the world folder.
+ * Each scan appends one line to the active segment. Segments are sealed by size or age and
+ * recorded in a small index of their time range and dimensions, which queries use to skip
+ * segments that can't match. Old segments are deleted once they pass the retention window.
+ *
+ * All file access happens on the {@link ReportExecutor} thread; callers only hand over values.
+ */
+public class ScanHistory {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final String INDEX_FILE = "index.ndjson";
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+
+    // History directory of the running server, or null while closed
+    private static volatile Path directory;
+
+    // I/O thread state
+    private static Segment active;
+    private static final List<IndexEntry> index = new ArrayList<>();
+
+    /**
+     * Time range and dimensions of a sealed segment.
+     */
+    private static class IndexEntry {
+        final String file;
+        final long from;
+        final long to;
+        final Set<String> dimensions;
+
+        IndexEntry(String file, long from, long to, Set<String> dimensions) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+            this.dimensions = dimensions;
+        }
+    }
+
+    /**
+     * The segment currently being appended to.
+     */
+    private static class Segment {
+        final Path path;
+        final long created;
+        final Writer writer;
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        long size = 0;
+        final Set<String> dimensions = new TreeSet<>();
+
+        Segment(Path path, long created) throws IOException {
+            this.path = path;
+            this.created = created;
+            this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Summary of the history entries matching a query.
+     */
+    public static class Summary {
+        private int scans = 0;
+        private long totalFound = 0;
+        private int maxFound = 0;
+        private long totalAdded = 0;
+        private long totalResolved = 0;
+        private long firstTimestamp = 0;
+        private long lastTimestamp = 0;
+        private final Map<String, Long> perDimension = new TreeMap<>();
+
+        public int getScans() {
+            return scans;
+        }
+
+        public long getTotalFound() {
+            return totalFound;
+        }
+
+        public int getMaxFound() {
+            return maxFound;
+        }
+
+        /**
+         * @return Clones that first appeared in the window, summed over the scans that recorded a delta
+         */
+        public long getTotalAdded() {
+            return totalAdded;
+        }
+
+        /**
+         * @return Clones that went away in the window, summed over the scans that recorded a delta
+         */
+        public long getTotalResolved() {
+            return totalResolved;
+        }
+
+        public long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public long getLastTimestamp() {
+            return lastTimestamp;
+        }
+
+        public Map<String, Long> getPerDimension() {
+            return perDimension;
+        }
+    }
+
+    /**
+     * Opens the history of the server's world and indexes segments left over from a previous run.
+     *
+     * @param server The Minecraft server instance
+     */
+    public static void open(MinecraftServer server) {
+        if (!Config.historyEnabled) return;
+
+        open(server.getWorldPath(LevelResource.ROOT).resolve("death_detangler").resolve("history"));
+    }
+
+    /**
+     * Opens the history stored in a directory and indexes segments left over from a previous run.
+     *
+     * @param dir The history directory; created if missing
+     */
+    static void open(Path dir) {
+        directory = dir;
+
+        ReportExecutor.submit(() -> {
+            Files.createDirectories(dir);
+            loadIndex(dir);
+            indexLeftoverSegments(dir);
+            applyRetention(dir);
+            return null;
+        }).exceptionally(e -> {
+            LOGGER.warn("[DeathDetangler] Failed to open scan history", e);
+            return null;
+        });
+    }
+
+    /**
+     * Seals the active segment and closes the history, e.g. when the server stops.
+     */
+    public static void close() {
+        Path dir = directory;
+        if (dir == null) return;
+        directory = null;
+
+        ReportExecutor.submit(() -> {
+            sealActive(dir);
+            index.clear();
+            return null;
+        }).exceptionally(e -> {
+            LOGGER.warn("[DeathDetangler] Failed to close scan history", e);
+            return null;
+        });
+    }
+
+    /**
+     * Appends a scan result to the history. Only counts are recorded, never entity details,
+     * so the cost is independent of how many clones were found. Scans with a {@link ScanDelta}
+     * also record how many clones were added and resolved since the previous pass.
+     *
+     * @param result The finished scan result
+     * @param removed Whether the scan removed the clones it found
+     * @param source What triggered the scan, e.g. "periodic" or "command"
+     */
+    public static void append(ScanResult result, boolean removed, String source) {
+        Path dir = directory;
+        if (dir == null) return;
+
+        long timestamp = System.currentTimeMillis() / 1000;
+        int total = result.getTotalFound();
+        Map<String, Integer> dimensions = new TreeMap<>();
+        for (Map.Entry<ResourceKey<Level>, Integer> entry : result.getPerDimension().entrySet()) {
+            dimensions.put(entry.getKey().location().toString(), entry.getValue());
+        }
+
+        ScanDelta delta = result.getDelta();
+        int added = delta != null ? delta.getAdded().size() : -1;
+        int resolved = delta != null ? delta.getResolved().size() : -1;
+
+        ReportExecutor.submit(() -> {
+            JsonObject line = new JsonObject();
+            line.addProperty("t", timestamp);
+            line.addProperty("source", source);
+            line.addProperty("removed", removed);
+            line.addProperty("total", total);
+            if (added >= 0) {
+                line.addProperty("added", added);
+                line.addProperty("resolved", resolved);
+            }
+            JsonObject dims = new JsonObject();
+            dimensions.forEach(dims::addProperty);
+            line.add("dims", dims);
+
+            writeLine(dir, timestamp, line.toString(), dimensions.keySet());
+            return null;
+        }).exceptionally(e -> {
+            LOGGER.warn("[DeathDetangler] Failed to append scan history", e);
+            return null;
+        });
+    }
+
+    /**
+     * Summarizes the history entries in a time window.
+     *
+     * @param sinceSeconds Only entries at or after this epoch second are included
+     * @param dimension Only this dimension is counted, or null for all
+     * @return A future completed with the summary on the I/O thread
+     */
+    public static CompletableFuture<Summary> query(long sinceSeconds, String dimension) {
+        Path dir = directory;
+        if (dir == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Scan history is not enabled"));
+        }
+
+        return ReportExecutor.submit(() -> {
+            Summary summary = new Summary();
+
+            for (IndexEntry entry : index) {
+                if (entry.to < sinceSeconds) continue;
+                if (dimension != null && !entry.dimensions.contains(dimension)) continue;
+                readSegment(dir.resolve(entry.file), sinceSeconds, dimension, summary);
+            }
+            if (active != null) {
+                active.writer.flush();
+                readSegment(active.path, sinceSeconds, dimension, summary);
+            }
+
+            return summary;
+        });
+    }
+
+    private static void writeLine(Path dir, long timestamp, String line, Set<String> dimensions) throws IOException {
+        if (active != null && (active.size >= Config.historySegmentMaxKb * 1024L
+                || timestamp - active.created >= Config.historySegmentMaxHours * 3600L)) {
+            sealActive(dir);
+            applyRetention(dir);
+        }
+
+        if (active == null) {
+            active = new Segment(dir.resolve(SEGMENT_PREFIX + System.currentTimeMillis() + SEGMENT_SUFFIX), timestamp);
+        }
+
+        active.writer.write(line);
+        active.writer.write('\n');
+        active.writer.flush();
+
+        active.size += line.length() + 1;
+        active.from = Math.min(active.from, timestamp);
+        active.to = Math.max(active.to, timestamp);
+        active.dimensions.addAll(dimensions);
+    }
+
+    private static void sealActive(Path dir) throws IOException {
+        if (active == null) return;
+
+        Segment segment = active;
+        active = null;
+        segment.writer.close();
+
+        if (segment.size == 0) {
+            Files.deleteIfExists(segment.path);
+            return;
+        }
+
+        IndexEntry entry = new IndexEntry(segment.path.getFileName().toString(), segment.from, segment.to, segment.dimensions);
+        index.add(entry);
+        appendIndexLine(dir, entry);
+    }
+
+    private static void readSegment(Path path, long sinceSeconds, String dimension, Summary summary) throws IOException {
+        if (!Files.exists(path)) return;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject json;
+                try {
+                    json = JsonParser.parseString(line).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    continue; // torn write from a crash
+                }
+                if (!json.has("t") || !json.has("total") || !json.has("dims")) continue;
+
+                long timestamp = json.get("t").getAsLong();
+                if (timestamp < sinceSeconds) continue;
+
+                JsonObject dims = json.getAsJsonObject("dims");
+                int found;
+                if (dimension != null) {
+                    if (!dims.has(dimension)) continue;
+                    found = dims.get(dimension).getAsInt();
+                } else {
+                    found = json.get("total").getAsInt();
+                }
+
+                summary.scans++;
+                summary.totalFound += found;
+                summary.maxFound = Math.max(summary.maxFound, found);
+                // Deltas are not kept per dimension, so they are only summed over all dimensions
+                if (dimension == null && json.has("added")) {
+                    summary.totalAdded += json.get("added").getAsLong();
+                    summary.totalResolved += json.get("resolved").getAsLong();
+                }
+                if (summary.firstTimestamp == 0 || timestamp < summary.firstTimestamp) summary.firstTimestamp = timestamp;
+                summary.lastTimestamp = Math.max(summary.lastTimestamp, timestamp);
+
+                for (String key : dims.keySet()) {
+                    if (dimension == null || dimension.equals(key)) {
+                        summary.perDimension.merge(key, dims.get(key).getAsLong(), Long::sum);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void loadIndex(Path dir) throws IOException {
+        index.clear();
+
+        Path indexPath = dir.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) return;
+
+        for (String line : Files.readAllLines(indexPath, StandardCharsets.UTF_8)) {
+            try {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                Set<String> dims = new TreeSet<>();
+                json.getAsJsonArray("dims").forEach(element -> dims.add(element.getAsString()));
+                index.add(new IndexEntry(json.get("file").getAsString(), json.get("from").getAsLong(), json.get("to").getAsLong(), dims));
+            } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                // Skip torn index lines; the segment is re-indexed below
+            }
+        }
+    }
+
+    private static void indexLeftoverSegments(Path dir) throws IOException {
+        Set<String> indexed = new HashSet<>();
+        for (IndexEntry entry : index) {
+            indexed.add(entry.file);
+        }
+
+        // Segments that were still active when the server last stopped or crashed
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String file = path.getFileName().toString();
+                if (indexed.contains(file)) continue;
+
+                long from = Long.MAX_VALUE;
+                long to = Long.MIN_VALUE;
+                Set<String> dims = new TreeSet<>();
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        try {
+                            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                            long timestamp = json.get("t").getAsLong();
+                            from = Math.min(from, timestamp);
+                            to = Math.max(to, timestamp);
+                            dims.addAll(json.getAsJsonObject("dims").keySet());
+                        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                            // torn write from a crash
+                        }
+                    }
+                }
+
+                if (from == Long.MAX_VALUE) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+
+                IndexEntry entry = new IndexEntry(file, from, to, dims);
+                index.add(entry);
+                appendIndexLine(dir, entry);
+            }
+        }
+    }
+
+    private static void applyRetention(Path dir) throws IOException {
+        long cutoff = System.currentTimeMillis() / 1000 - Config.historyRetentionDays * 86400L;
+
+        boolean changed = false;
+        Iterator<IndexEntry> it = index.iterator();
+        while (it.hasNext()) {
+            IndexEntry entry = it.next();
+            if (entry.to < cutoff) {
+                Files.deleteIfExists(dir.resolve(entry.file));
+                it.remove();
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            // Rewrite the index without the expired segments
+            Path indexPath = dir.resolve(INDEX_FILE);
+            Path temp = dir.resolve(INDEX_FILE + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (IndexEntry entry : index) {
+                    writer.write(toIndexLine(entry));
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void appendIndexLine(Path dir, IndexEntry entry) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(toIndexLine(entry));
+            writer.write('\n');
+        }
+    }
+
+    private static String toIndexLine(IndexEntry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("file", entry.file);
+        json.addProperty("from", entry.from);
+        json.addProperty("to", entry.to);
+        JsonArray dims = new JsonArray();
+        entry.dimensions.forEach(dims::add);
+        json.add("dims", dims);
+        return json.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Deadline queue of clone expiries keyed by server tick.
+ * Owners are scheduled when their clone becomes orphaned and cancelled when it stops being orphaned.
+ * Cancelled entries stay in the heap and are skipped when they reach the head, so
+ * scheduling and cancelling are cheap and an idle queue costs a single peek per tick.
+ * Only accessed from the server thread.
+ */
+public class CloneExpiryQueue {
+
+    private record Expiry(long deadline, UUID owner) {}
+
+    private final PriorityQueue<Expiry> queue = new PriorityQueue<>((a, b) -> Long.compare(a.deadline(), b.deadline()));
+
+    // Live deadline per owner; queue entries that don't match it are stale
+    private final Map<UUID, Long> deadlines = new HashMap<>();
+
+    /**
+     * Schedules expiry of an owner's clone. An earlier existing deadline is kept.
+     *
+     * @param owner The clone owner's UUID
+     * @param deadline Server tick at which the clone expires
+     */
+    public void schedule(UUID owner, long deadline) {
+        Long current = deadlines.get(owner);
+        if (current != null && current <= deadline) return;
+
+        deadlines.put(owner, deadline);
+        queue.add(new Expiry(deadline, owner));
+    }
+
+    /**
+     * Cancels a pending expiry, if any.
+     *
+     * @param owner The clone owner's UUID
+     */
+    public void cancel(UUID owner) {
+        deadlines.remove(owner);
+    }
+
+    /**
+     * @return true if an expiry is pending for the owner
+     */
+    public boolean isScheduled(UUID owner) {
+        return deadlines.containsKey(owner);
+    }
+
+    /**
+     * @return true if the earliest queued deadline has been reached
+     */
+    public boolean hasDue(long now) {
+        Expiry head = queue.peek();
+        return head != null && head.deadline() <= now;
+    }
+
+    /**
+     * Removes every expiry whose deadline has been reached and hands its owner to the action.
+     *
+     * @param now The current server tick
+     * @param action Called once per expired owner
+     */
+    public void pollDue(long now, Consumer<UUID> action) {
+        while (hasDue(now)) {
+            Expiry expiry = queue.poll();
+            Long live = deadlines.get(expiry.owner());
+            if (live == null || live != expiry.deadline()) continue; // cancelled or rescheduled
+
+            deadlines.remove(expiry.owner());
+            action.accept(expiry.owner());
+        }
+    }
+
+    /**
+     * @return Number of pending expiries
+     */
+    public int size() {
+        return deadlines.size();
+    }
+
+    public void clear() {
+        queue.clear();
+        deadlines.clear();
+    }
+}
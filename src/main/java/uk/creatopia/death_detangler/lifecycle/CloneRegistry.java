@@ -0,0 +1,177 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.*;
+
+/**
+ * Persistent registry of known revival clones, saved with the overworld so a restart
+ * knows where every clone is without scanning the world for them.
+ * <p>
+ * Records are grouped per dimension and stored as one long array each, six longs per clone:
+ * clone UUID (2), owner UUID (2), packed chunk position and spawn game time.
+ * <p>
+ * Server thread only.
+ */
+public class CloneRegistry extends SavedData {
+
+    private static final String DATA_NAME = "death_detangler_clones";
+    private static final String TAG_CLONES = "Clones";
+    private static final int STRIDE = 6;
+
+    /**
+     * A known clone.
+     *
+     * @param owner The owning player's UUID
+     * @param dimension The dimension the clone is in
+     * @param chunkPos The packed {@link ChunkPos} the clone was last seen in
+     * @param spawnTime The game time the clone was first registered
+     */
+    public record Record(UUID owner, ResourceKey<Level> dimension, long chunkPos, long spawnTime) {}
+
+    private final Map<UUID, Record> records = new HashMap<>();
+    private final boolean persisted;
+
+    private CloneRegistry(boolean persisted) {
+        this.persisted = persisted;
+    }
+
+    /**
+     * Gets the registry for a server, loading it from disk or creating it on first use.
+     *
+     * @param server The Minecraft server instance
+     * @return The server's clone registry
+     */
+    public static CloneRegistry get(MinecraftServer server) {
+        return server.overworld().getDataStorage().computeIfAbsent(CloneRegistry::load, () -> new CloneRegistry(false), DATA_NAME);
+    }
+
+    /**
+     * @return true if the registry was loaded from disk, i.e. clones have been recorded for this world before
+     */
+    public boolean isPersisted() {
+        return persisted;
+    }
+
+    /**
+     * Records a clone, or updates its position if already known. The original spawn time is kept.
+     *
+     * @param clone The clone's UUID
+     * @param owner The owning player's UUID
+     * @param dimension The dimension the clone is in
+     * @param chunkPos The packed chunk position of the clone
+     * @param gameTime The current game time
+     */
+    public void register(UUID clone, UUID owner, ResourceKey<Level> dimension, long chunkPos, long gameTime) {
+        Record existing = records.get(clone);
+        if (existing != null && existing.owner.equals(owner) && existing.dimension.equals(dimension) && existing.chunkPos == chunkPos) {
+            return;
+        }
+
+        long spawnTime = existing != null ? existing.spawnTime : gameTime;
+        records.put(clone, new Record(owner, dimension, chunkPos, spawnTime));
+        setDirty();
+    }
+
+    /**
+     * Forgets a clone, e.g. once it has been discarded.
+     *
+     * @param clone The clone's UUID
+     */
+    public void unregister(UUID clone) {
+        if (records.remove(clone) != null) {
+            setDirty();
+        }
+    }
+
+    /**
+     * @param clone The clone's UUID
+     * @return The clone's record, or null if unknown
+     */
+    public Record getRecord(UUID clone) {
+        return records.get(clone);
+    }
+
+    /**
+     * @return An unmodifiable view of all known clones, keyed by clone UUID
+     */
+    public Map<UUID, Record> getRecords() {
+        return Collections.unmodifiableMap(records);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag) {
+        Map<ResourceKey<Level>, List<Map.Entry<UUID, Record>>> byDimension = new HashMap<>();
+        for (Map.Entry<UUID, Record> entry : records.entrySet()) {
+            byDimension.computeIfAbsent(entry.getValue().dimension, key -> new ArrayList<>()).add(entry);
+        }
+
+        CompoundTag clones = new CompoundTag();
+        for (Map.Entry<ResourceKey<Level>, List<Map.Entry<UUID, Record>>> dimension : byDimension.entrySet()) {
+            List<Map.Entry<UUID, Record>> entries = dimension.getValue();
+            long[] packed = new long[entries.size() * STRIDE];
+
+            int i = 0;
+            for (Map.Entry<UUID, Record> entry : entries) {
+                Record record = entry.getValue();
+                packed[i++] = entry.getKey().getMostSignificantBits();
+                packed[i++] = entry.getKey().getLeastSignificantBits();
+                packed[i++] = record.owner.getMostSignificantBits();
+                packed[i++] = record.owner.getLeastSignificantBits();
+                packed[i++] = record.chunkPos;
+                packed[i++] = record.spawnTime;
+            }
+            clones.put(dimension.getKey().location().toString(), new LongArrayTag(packed));
+        }
+
+        tag.put(TAG_CLONES, clones);
+        return tag;
+    }
+
+    private static CloneRegistry load(CompoundTag tag) {
+        CloneRegistry registry = new CloneRegistry(true);
+        CompoundTag clones = tag.getCompound(TAG_CLONES);
+
+        for (String dimensionId : clones.getAllKeys()) {
+            ResourceLocation location = ResourceLocation.tryParse(dimensionId);
+            if (location == null || clones.getTagType(dimensionId) != Tag.TAG_LONG_ARRAY) continue;
+
+            ResourceKey<Level> dimension = ResourceKey.create(Registries.DIMENSION, location);
+            long[] packed = clones.getLongArray(dimensionId);
+            for (int i = 0; i + STRIDE <= packed.length; i += STRIDE) {
+                UUID clone = new UUID(packed[i], packed[i + 1]);
+                UUID owner = new UUID(packed[i + 2], packed[i + 3]);
+                registry.records.put(clone, new Record(owner, dimension, packed[i + 4], packed[i + 5]));
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Checks whether a record can be confirmed stale: its chunk's entities are loaded, yet the clone is not there.
+     *
+     * @param server The Minecraft server instance
+     * @param clone The clone's UUID
+     * @param record The clone's record
+     * @return true if the clone no longer exists
+     */
+    public static boolean isStale(MinecraftServer server, UUID clone, Record record) {
+        ServerLevel level = server.getLevel(record.dimension);
+        if (level == null) return true;
+        return level.areEntitiesLoaded(record.chunkPos) && level.getEntity(clone) == null;
+    }
+}
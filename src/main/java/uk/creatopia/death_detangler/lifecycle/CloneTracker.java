@@ -0,0 +1,365 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per-owner clone tracking: which clones belong to a player, and whether the player is in revival.
+ * <p>
+ * One open-addressing table (linear probing, backward-shift deletion) holds an entry per owner,
+ * keyed on the two longs of the owner's UUID, so clones and revival state can't drift apart the way
+ * two separate maps could. An owner can have several clones at once, e.g. after being knocked out twice
+ * in quick succession or in different dimensions; each entry heads a linked list of clone nodes kept in
+ * pooled parallel arrays, so tracking a clone allocates nothing once the pool has grown.
+ * <p>
+ * Clones are held by UUID and dimension rather than by reference and are looked up when needed,
+ * so a discarded or unloaded clone is never kept in memory by the tracker.
+ * <p>
+ * Only accessed from the server thread, which is where every entity and player event arrives.
+ */
+public class CloneTracker {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NONE = -1;
+
+    private static final byte USED = 1;
+    private static final byte IN_REVIVAL = 1 << 1;
+
+    // Owner table
+    private long[] ownerMost;
+    private long[] ownerLeast;
+    private int[] heads;
+    private byte[] states;
+    private int size = 0;
+
+    // Clone node pool; free nodes are chained through nodeNext
+    private long[] nodeMost = new long[INITIAL_CAPACITY];
+    private long[] nodeLeast = new long[INITIAL_CAPACITY];
+    @SuppressWarnings("unchecked")
+    private ResourceKey<Level>[] nodeDimensions = (ResourceKey<Level>[]) new ResourceKey<?>[INITIAL_CAPACITY];
+    private int[] nodeNext = new int[INITIAL_CAPACITY];
+    private int nodesUsed = 0;
+    private int freeNode = NONE;
+    private int cloneCount = 0;
+
+    public CloneTracker() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Records a clone for an owner and marks the owner as in revival.
+     * Clones tracked before are kept; tracking the same clone again only updates its dimension.
+     *
+     * @param owner The owning player's UUID
+     * @param clone The clone's UUID
+     * @param dimension The dimension the clone is in
+     */
+    public void trackClone(UUID owner, UUID clone, ResourceKey<Level> dimension) {
+        int slot = insert(owner);
+        states[slot] |= IN_REVIVAL;
+
+        long most = clone.getMostSignificantBits();
+        long least = clone.getLeastSignificantBits();
+        for (int node = heads[slot]; node != NONE; node = nodeNext[node]) {
+            if (nodeMost[node] == most && nodeLeast[node] == least) {
+                nodeDimensions[node] = dimension;
+                return;
+            }
+        }
+
+        int node = allocateNode();
+        nodeMost[node] = most;
+        nodeLeast[node] = least;
+        nodeDimensions[node] = dimension;
+        nodeNext[node] = heads[slot];
+        heads[slot] = node;
+        cloneCount++;
+    }
+
+    /**
+     * @param owner The owning player's UUID
+     * @return true if at least one clone is tracked for the owner
+     */
+    public boolean hasClone(UUID owner) {
+        int slot = find(owner);
+        return slot >= 0 && heads[slot] != NONE;
+    }
+
+    /**
+     * Looks up an owner's clones in their levels.
+     *
+     * @param server The Minecraft server instance
+     * @param owner The owning player's UUID
+     * @return The owner's loaded clones; empty if none are tracked or loaded
+     */
+    public List<Entity> getClones(MinecraftServer server, UUID owner) {
+        int slot = find(owner);
+        if (slot < 0 || heads[slot] == NONE) return List.of();
+
+        List<Entity> clones = new ArrayList<>(1);
+        for (int node = heads[slot]; node != NONE; node = nodeNext[node]) {
+            ServerLevel level = server.getLevel(nodeDimensions[node]);
+            if (level == null) continue;
+
+            Entity clone = level.getEntity(new UUID(nodeMost[node], nodeLeast[node]));
+            if (clone != null && !clone.isRemoved()) {
+                clones.add(clone);
+            }
+        }
+        return clones;
+    }
+
+    /**
+     * Forgets an owner and returns their loaded clones in one step, e.g. to discard all of them
+     * on respawn, logout or expiry.
+     *
+     * @param server The Minecraft server instance
+     * @param owner The owning player's UUID
+     * @return The owner's loaded clones; empty if none are tracked or loaded
+     */
+    public List<Entity> release(MinecraftServer server, UUID owner) {
+        List<Entity> clones = getClones(server, owner);
+        remove(owner);
+        return clones;
+    }
+
+    /**
+     * Stops tracking one of an owner's clones. Once the owner's last clone is gone,
+     * the owner also leaves the revival state, as the clones are what kept them in it.
+     *
+     * @param owner The owning player's UUID
+     * @param clone The clone's UUID
+     * @return true if the clone was tracked for the owner and has been dropped
+     */
+    public boolean untrackClone(UUID owner, UUID clone) {
+        int slot = find(owner);
+        if (slot < 0) return false;
+
+        long most = clone.getMostSignificantBits();
+        long least = clone.getLeastSignificantBits();
+        int previous = NONE;
+        for (int node = heads[slot]; node != NONE; previous = node, node = nodeNext[node]) {
+            if (nodeMost[node] != most || nodeLeast[node] != least) continue;
+
+            if (previous == NONE) {
+                heads[slot] = nodeNext[node];
+            } else {
+                nodeNext[previous] = nodeNext[node];
+            }
+            freeNode(node);
+
+            if (heads[slot] == NONE) {
+                delete(slot);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks an owner as in or out of revival. An owner out of revival and without clones is forgotten.
+     *
+     * @param owner The player's UUID
+     * @param inRevival Whether the player is in revival
+     */
+    public void setInRevival(UUID owner, boolean inRevival) {
+        if (inRevival) {
+            int slot = insert(owner);
+            states[slot] |= IN_REVIVAL;
+            return;
+        }
+
+        int slot = find(owner);
+        if (slot < 0) return;
+
+        if (heads[slot] == NONE) {
+            delete(slot);
+        } else {
+            states[slot] &= ~IN_REVIVAL;
+        }
+    }
+
+    /**
+     * @param owner The player's UUID
+     * @return true if the player is tracked as in revival
+     */
+    public boolean isInRevival(UUID owner) {
+        int slot = find(owner);
+        return slot >= 0 && (states[slot] & IN_REVIVAL) != 0;
+    }
+
+    /**
+     * Forgets an owner entirely: all their clones and their revival state.
+     *
+     * @param owner The player's UUID
+     */
+    public void remove(UUID owner) {
+        int slot = find(owner);
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    /**
+     * @return The number of tracked clones across all owners
+     */
+    public int cloneCount() {
+        return cloneCount;
+    }
+
+    /**
+     * @return The number of tracked owners, with or without clones
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+        Arrays.fill(nodeDimensions, null);
+        nodesUsed = 0;
+        freeNode = NONE;
+        cloneCount = 0;
+    }
+
+    // ---------------------------------------------------------------------
+    // Clone node pool
+    // ---------------------------------------------------------------------
+
+    private int allocateNode() {
+        if (freeNode != NONE) {
+            int node = freeNode;
+            freeNode = nodeNext[node];
+            return node;
+        }
+
+        if (nodesUsed == nodeNext.length) {
+            int capacity = nodeNext.length * 2;
+            nodeMost = Arrays.copyOf(nodeMost, capacity);
+            nodeLeast = Arrays.copyOf(nodeLeast, capacity);
+            nodeDimensions = Arrays.copyOf(nodeDimensions, capacity);
+            nodeNext = Arrays.copyOf(nodeNext, capacity);
+        }
+        return nodesUsed++;
+    }
+
+    private void freeNode(int node) {
+        nodeDimensions[node] = null;
+        nodeNext[node] = freeNode;
+        freeNode = node;
+        cloneCount--;
+    }
+
+    // ---------------------------------------------------------------------
+    // Owner table
+    // ---------------------------------------------------------------------
+
+    private int find(UUID owner) {
+        long most = owner.getMostSignificantBits();
+        long least = owner.getLeastSignificantBits();
+        int mask = states.length - 1;
+
+        for (int slot = hash(most, least) & mask; states[slot] != 0; slot = (slot + 1) & mask) {
+            if (ownerMost[slot] == most && ownerLeast[slot] == least) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(UUID owner) {
+        int existing = find(owner);
+        if (existing >= 0) return existing;
+
+        // Keep the load factor at or below one half
+        if ((size + 1) * 2 > states.length) {
+            resize(states.length * 2);
+        }
+
+        long most = owner.getMostSignificantBits();
+        long least = owner.getLeastSignificantBits();
+        int mask = states.length - 1;
+        int slot = hash(most, least) & mask;
+        while (states[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        ownerMost[slot] = most;
+        ownerLeast[slot] = least;
+        heads[slot] = NONE;
+        states[slot] = USED;
+        size++;
+        return slot;
+    }
+
+    private void delete(int slot) {
+        for (int node = heads[slot]; node != NONE; ) {
+            int next = nodeNext[node];
+            freeNode(node);
+            node = next;
+        }
+        size--;
+
+        // Shift later entries of the probe run back, so lookups never need tombstones
+        int mask = states.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (states[next] != 0) {
+            int home = hash(ownerMost[next], ownerLeast[next]) & mask;
+            // Move the entry if its home slot is not between the hole and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                ownerMost[hole] = ownerMost[next];
+                ownerLeast[hole] = ownerLeast[next];
+                heads[hole] = heads[next];
+                states[hole] = states[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        states[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldOwnerMost = ownerMost;
+        long[] oldOwnerLeast = ownerLeast;
+        int[] oldHeads = heads;
+        byte[] oldStates = states;
+
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldStates.length; i++) {
+            if (oldStates[i] == 0) continue;
+
+            int slot = hash(oldOwnerMost[i], oldOwnerLeast[i]) & mask;
+            while (states[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            ownerMost[slot] = oldOwnerMost[i];
+            ownerLeast[slot] = oldOwnerLeast[i];
+            heads[slot] = oldHeads[i];
+            states[slot] = oldStates[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        ownerMost = new long[capacity];
+        ownerLeast = new long[capacity];
+        heads = new int[capacity];
+        states = new byte[capacity];
+    }
+
+    private static int hash(long most, long least) {
+        // Player UUIDs are random, but offline-mode ones are name hashes; mix both halves to be safe
+        long h = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,31 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import net.blay09.mods.balm.api.Balm;
+import net.blay09.mods.hardcorerevival.api.PlayerKnockedOutEvent;
+import net.blay09.mods.hardcorerevival.api.PlayerRevivedEvent;
+import net.minecraft.server.level.ServerPlayer;
+import uk.creatopia.death_detangler.DeathDetangler;
+
+/**
+ * Bridges Hardcore Revival's knockout / revive events into the clone lifecycle,
+ * so clone expiry is rescheduled the moment a player's revival state changes.
+ */
+public class HardcoreRevivalEvents {
+
+    /**
+     * Registers the listeners on Balm's event bus.
+     */
+    public static void register() {
+        Balm.getEvents().onEvent(PlayerKnockedOutEvent.class, event -> {
+            if (event.getPlayer() instanceof ServerPlayer player) {
+                DeathDetangler.onOwnerKnockedOut(player);
+            }
+        });
+
+        Balm.getEvents().onEvent(PlayerRevivedEvent.class, event -> {
+            if (event.getPlayer() instanceof ServerPlayer player) {
+                DeathDetangler.onOwnerRevived(player);
+            }
+        });
+    }
+}
@@ -0,0 +1,130 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.fml.ModList;
+import org.slf4j.Logger;
+import uk.creatopia.death_detangler.logging.EventLog;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Wakes a knocked-out player through Hardcore Revival, for the totem mixin.
+ * The Hardcore Revival method to call is looked up once, the first time this class is used,
+ * and kept as a {@link MethodHandle}, so a knockout costs no reflection lookups.
+ */
+public class HardcoreRevivalWakeup {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final String HARDCORE_REVIVAL_MODID = "hardcorerevival";
+
+    /**
+     * The Hardcore Revival method used to wake players.
+     */
+    public enum Strategy {
+        /** {@code HardcoreRevivalManager.wakeup(ServerPlayer)} */
+        WAKEUP("net.blay09.mods.hardcorerevival.HardcoreRevivalManager", "wakeup"),
+        /** {@code PlayerHardcoreRevivalManager.reset(ServerPlayer)}, for versions without wakeup */
+        RESET("net.blay09.mods.hardcorerevival.PlayerHardcoreRevivalManager", "reset"),
+        /** Neither method is available; players can't be woken */
+        NONE(null, null);
+
+        private final String owner;
+        private final String method;
+
+        Strategy(String owner, String method) {
+            this.owner = owner;
+            this.method = method;
+        }
+    }
+
+    private static final Strategy STRATEGY;
+    private static final MethodHandle HANDLE;
+
+    static {
+        Strategy selected = Strategy.NONE;
+        MethodHandle handle = null;
+
+        for (Strategy candidate : Strategy.values()) {
+            if (candidate == Strategy.NONE) continue;
+
+            handle = resolve(candidate);
+            if (handle != null) {
+                selected = candidate;
+                break;
+            }
+        }
+
+        STRATEGY = selected;
+        HANDLE = handle;
+    }
+
+    /**
+     * @return The strategy selected at startup
+     */
+    public static Strategy getStrategy() {
+        return STRATEGY;
+    }
+
+    /**
+     * @return true if players can be woken, i.e. a strategy other than {@link Strategy#NONE} was found
+     */
+    public static boolean isAvailable() {
+        return HANDLE != null;
+    }
+
+    /**
+     * Wakes a knocked-out player using the selected strategy.
+     *
+     * @param player The player to wake
+     * @return true if the player was woken, false if no strategy is available or the call failed
+     */
+    public static boolean wakeup(ServerPlayer player) {
+        if (HANDLE == null) return false;
+
+        try {
+            HANDLE.invokeExact(player);
+            return true;
+        } catch (Throwable t) {
+            EventLog.warn(LOGGER, "wakeup_error", "[DeathDetangler] Failed to wake up player {} after totem usage via {}",
+                    player.getUUID(), STRATEGY, t);
+            return false;
+        }
+    }
+
+    /**
+     * Checks at startup that a wake-up strategy exists, and logs an error if Hardcore Revival is
+     * installed but neither method can be found. Totems then fall back to the normal knockout.
+     */
+    public static void selfTest() {
+        if (!ModList.get().isLoaded(HARDCORE_REVIVAL_MODID)) return;
+
+        if (STRATEGY == Strategy.NONE) {
+            LOGGER.error("[DeathDetangler] Neither {}.{} nor {}.{} was found in this Hardcore Revival version; "
+                            + "totems of undying will NOT prevent knockouts",
+                    Strategy.WAKEUP.owner, Strategy.WAKEUP.method, Strategy.RESET.owner, Strategy.RESET.method);
+        } else {
+            LOGGER.info("[DeathDetangler] Totem wake-up strategy: {} ({}.{})", STRATEGY, STRATEGY.owner, STRATEGY.method);
+        }
+    }
+
+    private static MethodHandle resolve(Strategy strategy) {
+        try {
+            Class<?> owner = Class.forName(strategy.owner);
+            Method method = owner.getMethod(strategy.method, ServerPlayer.class);
+            if (!Modifier.isStatic(method.getModifiers())) return null;
+
+            // Adapt to (ServerPlayer)void so invokeExact works whatever the method returns
+            return MethodHandles.publicLookup()
+                    .unreflect(method)
+                    .asType(MethodType.methodType(void.class, ServerPlayer.class));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package uk.creatopia.death_detangler.logging;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+import uk.creatopia.death_detangler.Config;
+import uk.creatopia.death_detangler.metrics.DeathDetanglerMetrics;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous, rate-limited logging for event hooks that can fire many times per tick.
+ * <p>
+ * Every message has a key naming what kind of event it reports. Within each window of
+ * {@link Config#logWindowSeconds}, only the first {@link Config#logSamplesPerWindow} messages per key
+ * are logged; the rest are counted and summarized in one line when the window closes.
+ * Messages that pass sampling go through a bounded queue to a background thread, which does the
+ * formatting and appending. If the queue is full the message is dropped and counted instead of
+ * blocking, so the cost on the calling thread stays flat however many events happen.
+ */
+public class EventLog {
+
+    private enum Level { DEBUG, INFO, WARN }
+
+    private record Entry(Logger logger, Level level, String format, Object[] args) {}
+
+    private static final class KeyWindow {
+        final Logger logger;
+        final AtomicInteger logged = new AtomicInteger();
+        final LongAdder suppressed = new LongAdder();
+
+        KeyWindow(Logger logger) {
+            this.logger = logger;
+        }
+    }
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final Map<String, KeyWindow> windows = new ConcurrentHashMap<>();
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile BlockingQueue<Entry> queue;
+
+    /**
+     * Logs a message at DEBUG level, subject to sampling.
+     *
+     * @param logger The logger to write to
+     * @param key Identifies the kind of event, for sampling and summaries
+     * @param format SLF4J format string
+     * @param args Format arguments; formatted later on the log thread, so they should not be mutated afterwards
+     */
+    public static void debug(Logger logger, String key, String format, Object... args) {
+        if (!logger.isDebugEnabled()) return;
+        submit(logger, Level.DEBUG, key, format, args);
+    }
+
+    /**
+     * Logs a message at INFO level, subject to sampling.
+     *
+     * @param logger The logger to write to
+     * @param key Identifies the kind of event, for sampling and summaries
+     * @param format SLF4J format string
+     * @param args Format arguments; formatted later on the log thread, so they should not be mutated afterwards
+     */
+    public static void info(Logger logger, String key, String format, Object... args) {
+        if (!logger.isInfoEnabled()) return;
+        submit(logger, Level.INFO, key, format, args);
+    }
+
+    /**
+     * Logs a message at WARN level, subject to sampling.
+     * A trailing {@link Throwable} argument is logged with its stack trace, as with SLF4J.
+     *
+     * @param logger The logger to write to
+     * @param key Identifies the kind of event, for sampling and summaries
+     * @param format SLF4J format string
+     * @param args Format arguments; formatted later on the log thread, so they should not be mutated afterwards
+     */
+    public static void warn(Logger logger, String key, String format, Object... args) {
+        if (!logger.isWarnEnabled()) return;
+        submit(logger, Level.WARN, key, format, args);
+    }
+
+    /**
+     * @return Number of messages dropped because the queue was full
+     */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    private static void submit(Logger logger, Level level, String key, String format, Object[] args) {
+        KeyWindow window = windows.computeIfAbsent(key, k -> new KeyWindow(logger));
+        if (window.logged.incrementAndGet() > Config.logSamplesPerWindow) {
+            window.suppressed.increment();
+            return;
+        }
+
+        if (!queue().offer(new Entry(logger, level, format, args))) {
+            dropped.increment();
+            DeathDetanglerMetrics.recordLogDropped();
+        }
+    }
+
+    private static BlockingQueue<Entry> queue() {
+        BlockingQueue<Entry> current = queue;
+        if (current != null) return current;
+
+        synchronized (EventLog.class) {
+            if (queue == null) {
+                BlockingQueue<Entry> created = new ArrayBlockingQueue<>(Math.max(16, Config.logQueueCapacity));
+                Thread writer = new Thread(() -> run(created), "DeathDetangler-Log");
+                writer.setDaemon(true);
+                writer.start();
+                queue = created;
+            }
+            return queue;
+        }
+    }
+
+    private static void run(BlockingQueue<Entry> queue) {
+        long windowStart = System.nanoTime();
+        long reportedDrops = 0;
+
+        while (true) {
+            try {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                if (entry != null) {
+                    write(entry);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // A broken appender or toString() must not kill the log thread
+            }
+
+            long now = System.nanoTime();
+            if (now - windowStart >= TimeUnit.SECONDS.toNanos(Math.max(1, Config.logWindowSeconds))) {
+                windowStart = now;
+                closeWindow();
+
+                long drops = dropped.sum();
+                if (drops > reportedDrops) {
+                    LOGGER.warn("[DeathDetangler] Log queue full; dropped {} message(s)", drops - reportedDrops);
+                    reportedDrops = drops;
+                }
+            }
+        }
+    }
+
+    private static void closeWindow() {
+        for (Map.Entry<String, KeyWindow> e : windows.entrySet()) {
+            KeyWindow window = e.getValue();
+            long suppressed = window.suppressed.sumThenReset();
+            window.logged.set(0);
+
+            if (suppressed > 0) {
+                window.logger.info("[DeathDetangler] {}: {} more event(s) in the last {}s not logged individually",
+                    e.getKey(), suppressed, Config.logWindowSeconds);
+            }
+        }
+    }
+
+    private static void write(Entry entry) {
+        switch (entry.level) {
+            case DEBUG -> entry.logger.debug(entry.format, entry.args);
+            case INFO -> entry.logger.info(entry.format, entry.args);
+            case WARN -> entry.logger.warn(entry.format, entry.args);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package uk.creatopia.death_detangler.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-mod metrics registry for the clone lifecycle and scan cost.
+ * Counters are {@link LongAdder}s and latencies {@link LatencyHistogram}s, so recording
+ * from hot paths is lock-free. Values are cumulative since the game was started.
+ */
+public class DeathDetanglerMetrics {
+
+    private static final LongAdder scans = new LongAdder();
+    private static final LongAdder entitiesVisited = new LongAdder();
+    private static final LongAdder candidatesClassified = new LongAdder();
+    private static final LongAdder clonesDetected = new LongAdder();
+    private static final LongAdder clonesRemoved = new LongAdder();
+    private static final LongAdder deathsCancelled = new LongAdder();
+    private static final LongAdder totemInterceptions = new LongAdder();
+    private static final LongAdder logsDropped = new LongAdder();
+    private static final LongAdder loadSweeps = new LongAdder();
+
+    private static final LatencyHistogram scanDuration = new LatencyHistogram();
+    private static final LatencyHistogram joinHookLatency = new LatencyHistogram();
+    private static final Map<String, LatencyHistogram> dimensionScanDuration = new ConcurrentHashMap<>();
+
+    /**
+     * Records a finished scan pass.
+     *
+     * @param serverThreadNanos Time the pass spent on the server thread, across all ticks
+     */
+    public static void recordScan(long serverThreadNanos) {
+        scans.increment();
+        scanDuration.record(serverThreadNanos);
+    }
+
+    /**
+     * Records the server-thread time spent snapshotting one dimension during a scan.
+     *
+     * @param dimension The dimension id
+     * @param nanos The time spent
+     */
+    public static void recordDimensionScan(String dimension, long nanos) {
+        dimensionScanDuration.computeIfAbsent(dimension, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    public static void recordEntitiesVisited(long count) {
+        entitiesVisited.add(count);
+    }
+
+    public static void recordCandidatesClassified(long count) {
+        candidatesClassified.add(count);
+    }
+
+    public static void recordCloneDetected() {
+        clonesDetected.increment();
+    }
+
+    public static void recordCloneRemoved() {
+        clonesRemoved.increment();
+    }
+
+    public static void recordDeathCancelled() {
+        deathsCancelled.increment();
+    }
+
+    public static void recordTotemInterception() {
+        totemInterceptions.increment();
+    }
+
+    public static void recordLoadSweep() {
+        loadSweeps.increment();
+    }
+
+    public static void recordLogDropped() {
+        logsDropped.increment();
+    }
+
+    public static void recordJoinHook(long nanos) {
+        joinHookLatency.record(nanos);
+    }
+
+    public static long getScans() {
+        return scans.sum();
+    }
+
+    public static long getEntitiesVisited() {
+        return entitiesVisited.sum();
+    }
+
+    public static long getCandidatesClassified() {
+        return candidatesClassified.sum();
+    }
+
+    public static long getClonesDetected() {
+        return clonesDetected.sum();
+    }
+
+    public static long getClonesRemoved() {
+        return clonesRemoved.sum();
+    }
+
+    public static long getDeathsCancelled() {
+        return deathsCancelled.sum();
+    }
+
+    public static long getTotemInterceptions() {
+        return totemInterceptions.sum();
+    }
+
+    public static long getLoadSweeps() {
+        return loadSweeps.sum();
+    }
+
+    public static long getLogsDropped() {
+        return logsDropped.sum();
+    }
+
+    public static LatencyHistogram getScanDuration() {
+        return scanDuration;
+    }
+
+    public static LatencyHistogram getJoinHookLatency() {
+        return joinHookLatency;
+    }
+
+    /**
+     * @return Per-dimension scan histograms, sorted by dimension id
+     */
+    public static Map<String, LatencyHistogram> getDimensionScanDuration() {
+        return new TreeMap<>(dimensionScanDuration);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     * Histograms are exposed as summaries with 0.5, 0.9 and 0.99 quantiles, in seconds.
+     *
+     * @return The exposition text
+     */
+    public static String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+
+        counter(out, "scans_total", "Finished clone scan passes", getScans());
+        counter(out, "entities_visited_total", "Candidate entities visited by scans", getEntitiesVisited());
+        counter(out, "candidates_classified_total", "Candidate snapshots classified by scans", getCandidatesClassified());
+        counter(out, "clones_detected_total", "Orphan clones detected by scans", getClonesDetected());
+        counter(out, "clones_removed_total", "Orphan clones removed by scans", getClonesRemoved());
+        counter(out, "deaths_cancelled_total", "Death events cancelled for revival clones", getDeathsCancelled());
+        counter(out, "totem_interceptions_total", "Knockouts replaced by a totem of undying", getTotemInterceptions());
+        counter(out, "clones_swept_on_load_total", "Orphan clones removed as their chunk loaded", getLoadSweeps());
+        counter(out, "logs_dropped_total", "Log messages dropped because the log queue was full", getLogsDropped());
+
+        summaryHeader(out, "scan_seconds", "Server-thread time per scan pass");
+        summary(out, "scan_seconds", "", scanDuration);
+
+        summaryHeader(out, "dimension_scan_seconds", "Server-thread time per dimension per scan pass");
+        for (Map.Entry<String, LatencyHistogram> entry : getDimensionScanDuration().entrySet()) {
+            summary(out, "dimension_scan_seconds", "dimension=\"" + entry.getKey() + "\"", entry.getValue());
+        }
+
+        summaryHeader(out, "join_hook_seconds", "Entity join hook latency");
+        summary(out, "join_hook_seconds", "", joinHookLatency);
+
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP death_detangler_").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE death_detangler_").append(name).append(" counter\n");
+        out.append("death_detangler_").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summaryHeader(StringBuilder out, String name, String help) {
+        out.append("# HELP death_detangler_").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE death_detangler_").append(name).append(" summary\n");
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (double quantile : new double[] {0.5, 0.9, 0.99}) {
+            out.append("death_detangler_").append(name)
+                .append("{").append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                .append(histogram.getPercentile(quantile) / 1e9).append('\n');
+        }
+
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append("death_detangler_").append(name).append("_sum").append(suffix).append(' ')
+            .append(histogram.getSum() / 1e9).append('\n');
+        out.append("death_detangler_").append(name).append("_count").append(suffix).append(' ')
+            .append(histogram.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,98 @@
+package uk.creatopia.death_detangler.metrics;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import uk.creatopia.death_detangler.Config;
+import uk.creatopia.death_detangler.report.ReportExecutor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Periodically writes {@link DeathDetanglerMetrics} as a Prometheus text file to
+ * {@code <world>/death_detangler/metrics.prom}, for collection by the node_exporter textfile collector
+ * or any agent that tails files. The file is replaced atomically, so readers never see a partial write.
+ */
+public class MetricsExporter {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final String FILE_NAME = "metrics.prom";
+
+    private static int tickCounter = 0;
+
+    // Skips an export while the previous one is still queued on the I/O thread
+    private static volatile boolean writing = false;
+
+    /**
+     * Counts a server tick and exports the metrics when the configured interval has passed.
+     * Must be called on the server thread.
+     *
+     * @param server The Minecraft server instance
+     */
+    public static void tick(MinecraftServer server) {
+        if (!Config.metricsExportEnabled) return;
+
+        if (++tickCounter < Config.metricsExportIntervalTicks) return;
+        tickCounter = 0;
+
+        export(server);
+    }
+
+    /**
+     * Renders the metrics now and writes them on the I/O thread.
+     *
+     * @param server The Minecraft server instance
+     */
+    public static void export(MinecraftServer server) {
+        if (writing) return;
+        writing = true;
+
+        Path target = getExportPath(server);
+        String text = DeathDetanglerMetrics.toPrometheusText();
+
+        ReportExecutor.submit(() -> write(target, text)).whenComplete((path, error) -> {
+            writing = false;
+            if (error != null) {
+                LOGGER.warn("[DeathDetangler] Failed to export metrics to {}", target, error);
+            }
+        });
+    }
+
+    /**
+     * Resets the export timer, e.g. when the server stops.
+     */
+    public static void reset() {
+        tickCounter = 0;
+    }
+
+    /**
+     * Gets the path of the metrics file for a server.
+     *
+     * @param server The Minecraft server instance
+     * @return Path to the metrics file
+     */
+    public static Path getExportPath(MinecraftServer server) {
+        return server.getWorldPath(LevelResource.ROOT).resolve("death_detangler").resolve(FILE_NAME);
+    }
+
+    private static Path write(Path target, String text) throws IOException {
+        Files.createDirectories(target.getParent());
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(temp, text, StandardCharsets.UTF_8);
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+}
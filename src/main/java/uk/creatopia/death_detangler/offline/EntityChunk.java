@@ -0,0 +1,317 @@
+package uk.creatopia.death_detangler.offline;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The entities of one chunk, read from the uncompressed NBT of an entity region file.
+ * <p>
+ * Only the fields the clone rules need are decoded: each entity's type id, UUID, scoreboard tags, the key names
+ * of its Forge persistent data and which of those hold a true byte. Everything else is skipped, and each entity's
+ * byte range is remembered, so entities can be cut out of the chunk again without re-encoding anything else.
+ * <p>
+ * Entities riding another entity are stored inside its {@code Passengers} list and skipped along with it,
+ * so only the top-level entities of a chunk are read: cutting a passenger out would mean rewriting its vehicle.
+ */
+final class EntityChunk {
+
+    private static final int TAG_END = 0;
+    private static final int TAG_BYTE = 1;
+    private static final int TAG_SHORT = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_FLOAT = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_BYTE_ARRAY = 7;
+    private static final int TAG_STRING = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_COMPOUND = 10;
+    private static final int TAG_INT_ARRAY = 11;
+    private static final int TAG_LONG_ARRAY = 12;
+
+    // Same limit as the game's own NBT reader
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * One entity in the chunk's {@code Entities} list.
+     */
+    static final class Entity {
+        final int start;
+        final int end;
+        final String id;
+        final UUID uuid;
+        final Set<String> forgeDataKeys;
+        final Set<String> forgeDataTrue;
+        final Set<String> tags;
+
+        Entity(int start, int end, String id, UUID uuid, Set<String> forgeDataKeys, Set<String> forgeDataTrue,
+               Set<String> tags) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.uuid = uuid;
+            this.forgeDataKeys = forgeDataKeys;
+            this.forgeDataTrue = forgeDataTrue;
+            this.tags = tags;
+        }
+    }
+
+    private final byte[] data;
+    private final int countOffset;
+    private final int listEnd;
+    private final List<Entity> entities;
+
+    private EntityChunk(byte[] data, int countOffset, int listEnd, List<Entity> entities) {
+        this.data = data;
+        this.countOffset = countOffset;
+        this.listEnd = listEnd;
+        this.entities = entities;
+    }
+
+    /**
+     * @return The entities of the chunk, in stored order
+     */
+    List<Entity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Parses the uncompressed NBT of an entity chunk.
+     *
+     * @param data The chunk NBT, starting with the root compound tag
+     * @return The parsed chunk
+     * @throws IOException If the data is not a well-formed entity chunk
+     */
+    static EntityChunk parse(byte[] data) throws IOException {
+        try {
+            return new Parser(data).parseRoot();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated chunk NBT", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed chunk NBT", e);
+        }
+    }
+
+    /**
+     * Encodes the chunk without some of its entities. All other bytes are copied unchanged.
+     *
+     * @param removed Indices into {@link #getEntities()} of the entities to drop
+     * @return The new chunk NBT
+     */
+    byte[] without(BitSet removed) {
+        int removedBytes = 0;
+        for (int i = removed.nextSetBit(0); i >= 0; i = removed.nextSetBit(i + 1)) {
+            Entity entity = entities.get(i);
+            removedBytes += entity.end - entity.start;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(data.length - removedBytes);
+        out.put(data, 0, countOffset);
+        out.putInt(entities.size() - removed.cardinality());
+        for (int i = 0; i < entities.size(); i++) {
+            if (removed.get(i)) continue;
+            Entity entity = entities.get(i);
+            out.put(data, entity.start, entity.end - entity.start);
+        }
+        out.put(data, listEnd, data.length - listEnd);
+        return out.array();
+    }
+
+    private static final class Parser {
+        private final byte[] data;
+        private final ByteBuffer buf;
+
+        Parser(byte[] data) {
+            this.data = data;
+            this.buf = ByteBuffer.wrap(data);
+        }
+
+        EntityChunk parseRoot() throws IOException {
+            if (buf.get() != TAG_COMPOUND) {
+                throw new IOException("Chunk NBT does not start with a compound tag");
+            }
+            skipString();
+
+            int countOffset = -1;
+            int listEnd = -1;
+            List<Entity> entities = List.of();
+
+            while (true) {
+                int type = buf.get();
+                if (type == TAG_END) break;
+                String name = readString();
+
+                if (type == TAG_LIST && name.equals("Entities")) {
+                    int elementType = buf.get();
+                    countOffset = buf.position();
+                    int count = listCount();
+
+                    if (elementType == TAG_COMPOUND) {
+                        entities = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            entities.add(parseEntity());
+                        }
+                    } else if (count > 0) {
+                        throw new IOException("Entities list holds tag type " + elementType);
+                    }
+                    listEnd = buf.position();
+                } else {
+                    skip(type, 1);
+                }
+            }
+
+            if (countOffset < 0) {
+                // No entity list at all; nothing can be removed, so offsets are never used
+                return new EntityChunk(data, 0, 0, List.of());
+            }
+            return new EntityChunk(data, countOffset, listEnd, entities);
+        }
+
+        private Entity parseEntity() throws IOException {
+            int start = buf.position();
+            String id = null;
+            UUID uuid = null;
+            Set<String> forgeDataKeys = Set.of();
+            Set<String> forgeDataTrue = Set.of();
+            Set<String> tags = Set.of();
+
+            while (true) {
+                int type = buf.get();
+                if (type == TAG_END) break;
+                String name = readString();
+
+                if (type == TAG_STRING && name.equals("id")) {
+                    id = readString();
+                } else if (type == TAG_INT_ARRAY && name.equals("UUID")) {
+                    long length = length(4);
+                    if (length == 16) {
+                        uuid = new UUID((long) buf.getInt() << 32 | (buf.getInt() & 0xFFFFFFFFL),
+                                (long) buf.getInt() << 32 | (buf.getInt() & 0xFFFFFFFFL));
+                    } else {
+                        advance(length);
+                    }
+                } else if (type == TAG_COMPOUND && name.equals("ForgeData")) {
+                    forgeDataKeys = new HashSet<>();
+                    forgeDataTrue = new HashSet<>();
+                    readKeys(forgeDataKeys, forgeDataTrue);
+                } else if (type == TAG_LIST && name.equals("Tags") && buf.get(buf.position()) == TAG_STRING) {
+                    buf.get();
+                    int count = listCount();
+                    tags = new HashSet<>();
+                    for (int i = 0; i < count; i++) {
+                        tags.add(readString());
+                    }
+                } else {
+                    skip(type, 2);
+                }
+            }
+
+            return new Entity(start, buf.position(), id, uuid, forgeDataKeys, forgeDataTrue, tags);
+        }
+
+        private void readKeys(Set<String> keys, Set<String> trueKeys) throws IOException {
+            while (true) {
+                int type = buf.get();
+                if (type == TAG_END) return;
+                String key = readString();
+                keys.add(key);
+
+                // Booleans are stored as bytes, as CompoundTag.getBoolean reads them
+                if (type == TAG_BYTE) {
+                    if (buf.get() != 0) {
+                        trueKeys.add(key);
+                    }
+                } else {
+                    skip(type, 3);
+                }
+            }
+        }
+
+        private void skip(int type, int depth) throws IOException {
+            if (depth > MAX_DEPTH) {
+                throw new IOException("NBT nested deeper than " + MAX_DEPTH);
+            }
+
+            switch (type) {
+                case TAG_BYTE -> advance(1);
+                case TAG_SHORT -> advance(2);
+                case TAG_INT, TAG_FLOAT -> advance(4);
+                case TAG_LONG, TAG_DOUBLE -> advance(8);
+                case TAG_BYTE_ARRAY -> advance(length(1));
+                case TAG_INT_ARRAY -> advance(length(4));
+                case TAG_LONG_ARRAY -> advance(length(8));
+                case TAG_STRING -> skipString();
+                case TAG_LIST -> {
+                    int elementType = buf.get();
+                    int count = listCount();
+                    switch (elementType) {
+                        case TAG_END -> { }
+                        case TAG_BYTE -> advance(count);
+                        case TAG_SHORT -> advance(count * 2L);
+                        case TAG_INT, TAG_FLOAT -> advance(count * 4L);
+                        case TAG_LONG, TAG_DOUBLE -> advance(count * 8L);
+                        default -> {
+                            for (int i = 0; i < count; i++) {
+                                skip(elementType, depth + 1);
+                            }
+                        }
+                    }
+                }
+                case TAG_COMPOUND -> {
+                    while (true) {
+                        int entryType = buf.get();
+                        if (entryType == TAG_END) break;
+                        skipString();
+                        skip(entryType, depth + 1);
+                    }
+                }
+                default -> throw new IOException("Unknown NBT tag type " + type);
+            }
+        }
+
+        private long length(int elementSize) throws IOException {
+            int length = buf.getInt();
+            if (length < 0) throw new IOException("Negative NBT array length");
+            return (long) length * elementSize;
+        }
+
+        // Every list element takes at least one byte, so a count beyond the bytes left can't be genuine
+        private int listCount() throws IOException {
+            int count = buf.getInt();
+            if (count < 0 || count > buf.remaining()) {
+                throw new IOException("Malformed NBT list length " + count);
+            }
+            return count;
+        }
+
+        private void advance(long bytes) throws IOException {
+            if (bytes < 0 || bytes > buf.remaining()) {
+                throw new IOException("NBT value runs past the end of the chunk");
+            }
+            buf.position(buf.position() + (int) bytes);
+        }
+
+        private void skipString() throws IOException {
+            advance(buf.getShort() & 0xFFFF);
+        }
+
+        private String readString() throws IOException {
+            int length = buf.getShort() & 0xFFFF;
+            int offset = buf.position();
+            advance(length);
+
+            // NBT strings are modified UTF-8; plain ASCII, by far the common case, decodes directly
+            for (int i = offset; i < offset + length; i++) {
+                if (data[i] <= 0) {
+                    return new DataInputStream(new ByteArrayInputStream(data, offset - 2, length + 2)).readUTF();
+                }
+            }
+            return new String(data, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
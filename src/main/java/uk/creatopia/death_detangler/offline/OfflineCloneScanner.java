@@ -0,0 +1,357 @@
+package uk.creatopia.death_detangler.offline;
+
+import uk.creatopia.death_detangler.util.CloneFlags;
+import uk.creatopia.death_detangler.util.DetectionRules;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Headless tool that finds, and optionally removes, leaked revival clones in a stopped world
+ * by reading its entity region files directly, without loading the game.
+ * <p>
+ * Region files are processed in parallel, one per worker. Each chunk is decompressed and its
+ * entity list scanned for clones. A chunk entity is a clone if its type, Forge persistent data and tags
+ * reach the clone score of {@link DetectionRules}, the same rule that marks clones as they join a running server.
+ * The rules are read from the server's {@code config/death_detangler-common.toml} next to the world folder,
+ * or from the file given with {@code --config}; without either, the built-in defaults apply.
+ * A stopped world has no connections or player list, so those scan signals can't narrow the result down;
+ * with {@code --all}, every entity of a revival type or carrying any revival marker, corpse and grave keys included,
+ * is treated as a clone as well. Clones are written to a report in the same JSON format as {@code /death_detangler dump}; with
+ * {@code --purge}, the affected region files are also rewritten without them.
+ * <p>
+ * Usage: {@code OfflineCloneScanner <world-dir> [--report <file.json[.gz]>] [--purge] [--all] [--threads <n>] [--config <file.toml>]}
+ */
+public class OfflineCloneScanner {
+
+    private static final String DEFAULT_REPORT = "death_detangler_offline_report.json";
+
+    private static final String USAGE =
+            "Usage: OfflineCloneScanner <world-dir> [--report <file.json[.gz]>] [--purge] [--all] [--threads <n>] [--config <file.toml>]";
+
+    private record Options(Path world, Path report, boolean purge, boolean all, int threads, Path config) {}
+
+    // A clone found in a chunk; a stopped world has no tick counts to report
+    private record Clone(String uuid, int flagMask) {}
+
+    private record RegionResult(String dimension, List<Clone> clones,
+                                int chunks, long entities, int errors, boolean rewritten) {}
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            System.exit(run(options));
+        } catch (IOException e) {
+            System.err.println("[DeathDetangler] Offline scan failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static int run(Options options) throws IOException {
+        if (!Files.isDirectory(options.world)) {
+            throw new IOException("World directory not found: " + options.world);
+        }
+
+        loadRules(options);
+
+        Map<Path, String> regionDirs = findEntityRegionDirs(options.world);
+        if (regionDirs.isEmpty()) {
+            throw new IOException("No entity region folders found under " + options.world);
+        }
+
+        if (!options.purge) {
+            return scan(options, regionDirs);
+        }
+
+        // Rewriting region files under a running server would corrupt the world
+        WorldLock lock = WorldLock.acquire(options.world);
+        try {
+            return scan(options, regionDirs);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Makes the world's detection rules current, so chunks are matched the way its server would.
+     */
+    private static void loadRules(Options options) throws IOException {
+        Path config = options.config;
+        if (config == null) {
+            config = OfflineConfig.find(options.world);
+        } else if (!Files.isRegularFile(config)) {
+            throw new IOException("Config file not found: " + config);
+        }
+
+        if (config == null) {
+            System.out.println("[DeathDetangler] No " + OfflineConfig.FILE_NAME + " found next to the world; "
+                    + "using the default detection rules (pass --config to use a server's rules)");
+            return;
+        }
+
+        DetectionRules.setCurrent(OfflineConfig.load(config));
+        System.out.println("[DeathDetangler] Using the detection rules from " + config);
+    }
+
+    private static int scan(Options options, Map<Path, String> regionDirs) throws IOException {
+        List<Map.Entry<Path, String>> regions = new ArrayList<>();
+        for (Map.Entry<Path, String> dir : regionDirs.entrySet()) {
+            try (Stream<Path> files = Files.list(dir.getKey())) {
+                files.filter(file -> file.getFileName().toString().endsWith(".mca"))
+                        .sorted()
+                        .forEach(file -> regions.add(Map.entry(file, dir.getValue())));
+            }
+        }
+
+        System.out.println("[DeathDetangler] Scanning " + regions.size() + " entity region file(s) in "
+                + regionDirs.size() + " dimension(s) with " + options.threads + " thread(s)"
+                + (options.all ? ", matching any revival marker" : "")
+                + (options.purge ? ", removing clones" : ""));
+
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads, runnable -> {
+            Thread thread = new Thread(runnable, "DeathDetangler-Offline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<RegionResult> completion = new ExecutorCompletionService<>(pool);
+        for (Map.Entry<Path, String> region : regions) {
+            completion.submit(() -> scanRegion(region.getKey(), region.getValue(), options));
+        }
+
+        int totalFound = 0;
+        int chunks = 0;
+        long entities = 0;
+        int errors = 0;
+        int rewritten = 0;
+        Map<String, Integer> dimensions = new TreeMap<>();
+
+        // Results are written as each region finishes, so only in-flight regions are held in memory
+        try (OfflineReportWriter writer = new OfflineReportWriter(options.report,
+                options.report.getFileName().toString().endsWith(".gz"))) {
+            for (int i = 0; i < regions.size(); i++) {
+                RegionResult result;
+                try {
+                    result = completion.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    errors++;
+                    System.err.println("[DeathDetangler] " + e.getCause());
+                    continue;
+                }
+
+                for (Clone clone : result.clones) {
+                    writer.writeClone(clone.uuid, result.dimension, clone.flagMask);
+                }
+                if (!result.clones.isEmpty()) {
+                    dimensions.merge(result.dimension, result.clones.size(), Integer::sum);
+                }
+                totalFound += result.clones.size();
+                chunks += result.chunks;
+                entities += result.entities;
+                errors += result.errors;
+                if (result.rewritten) rewritten++;
+            }
+
+            writer.finish(totalFound, dimensions);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        System.out.println("[DeathDetangler] Scanned " + chunks + " chunk(s), " + entities + " entit(y/ies); found "
+                + totalFound + " clone(s)" + (options.purge ? ", rewrote " + rewritten + " region file(s)" : ""));
+        System.out.println("[DeathDetangler] Report written to " + options.report);
+        if (errors > 0) {
+            System.err.println("[DeathDetangler] " + errors + " chunk(s) or region(s) could not be read and were left untouched");
+        }
+        return errors > 0 ? 1 : 0;
+    }
+
+    private static RegionResult scanRegion(Path file, String dimension, Options options) throws IOException {
+        DetectionRules rules = DetectionRules.current();
+        List<Clone> clones = new ArrayList<>();
+        Map<Integer, byte[]> replacements = new HashMap<>();
+        int chunks = 0;
+        long entities = 0;
+        int errors = 0;
+
+        // A region that may be rewritten must not stay mapped, see RegionFile
+        try (RegionFile region = options.purge ? RegionFile.load(file) : RegionFile.open(file)) {
+            for (int i = 0; i < RegionFile.CHUNKS; i++) {
+                if (!region.hasChunk(i)) continue;
+
+                EntityChunk chunk;
+                try {
+                    chunk = EntityChunk.parse(region.readChunk(i));
+                } catch (IOException e) {
+                    errors++;
+                    System.err.println("[DeathDetangler] Skipping chunk " + region.chunkX(i) + "," + region.chunkZ(i)
+                            + " in " + file + ": " + e.getMessage());
+                    continue;
+                }
+                chunks++;
+
+                List<EntityChunk.Entity> chunkEntities = chunk.getEntities();
+                entities += chunkEntities.size();
+
+                BitSet removed = new BitSet();
+                for (int e = 0; e < chunkEntities.size(); e++) {
+                    EntityChunk.Entity entity = chunkEntities.get(e);
+                    int typeScore = rules.typeScore(entity.id);
+                    int keyMask = rules.revivalKeyMask(entity.forgeDataKeys, entity.forgeDataTrue::contains);
+                    boolean clone = rules.isClone(typeScore, entity.forgeDataKeys, entity.forgeDataTrue::contains, entity.tags)
+                            || (options.all && (typeScore > 0 || keyMask != 0));
+                    if (!clone) continue;
+
+                    // A stopped world has no connections and no player list, so those signals always apply
+                    int mask = CloneFlags.computeMask(true, true, keyMask, 0);
+                    clones.add(new Clone(entity.uuid != null ? entity.uuid.toString() : "unknown", mask));
+                    removed.set(e);
+                }
+
+                if (options.purge && !removed.isEmpty()) {
+                    replacements.put(i, chunk.without(removed));
+                }
+            }
+
+            if (!replacements.isEmpty()) {
+                region.rewrite(replacements);
+            }
+        }
+
+        return new RegionResult(dimension, clones, chunks, entities, errors, !replacements.isEmpty());
+    }
+
+    /**
+     * Finds the entity region folders of a world, keyed to their dimension ids.
+     */
+    private static Map<Path, String> findEntityRegionDirs(Path world) throws IOException {
+        Map<Path, String> dirs = new LinkedHashMap<>();
+        addIfPresent(dirs, world.resolve("entities"), "minecraft:overworld");
+        addIfPresent(dirs, world.resolve("DIM-1").resolve("entities"), "minecraft:the_nether");
+        addIfPresent(dirs, world.resolve("DIM1").resolve("entities"), "minecraft:the_end");
+
+        // Modded and datapack dimensions: dimensions/<namespace>/<path...>/entities
+        Path custom = world.resolve("dimensions");
+        if (Files.isDirectory(custom)) {
+            try (Stream<Path> paths = Files.walk(custom)) {
+                paths.filter(path -> Files.isDirectory(path) && path.getFileName().toString().equals("entities"))
+                        .sorted()
+                        .forEach(path -> {
+                            Path relative = custom.relativize(path.getParent());
+                            if (relative.getNameCount() < 2) return;
+
+                            StringBuilder id = new StringBuilder(relative.getName(0).toString()).append(':');
+                            for (int i = 1; i < relative.getNameCount(); i++) {
+                                if (i > 1) id.append('/');
+                                id.append(relative.getName(i));
+                            }
+                            dirs.put(path, id.toString());
+                        });
+            }
+        }
+        return dirs;
+    }
+
+    private static void addIfPresent(Map<Path, String> dirs, Path dir, String dimension) {
+        if (Files.isDirectory(dir)) {
+            dirs.put(dir, dimension);
+        }
+    }
+
+    private static Options parseArgs(String[] args) {
+        Path world = null;
+        Path report = null;
+        boolean purge = false;
+        boolean all = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path config = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--report" -> report = Path.of(value(args, ++i, "--report"));
+                case "--purge" -> purge = true;
+                case "--all" -> all = true;
+                case "--config" -> config = Path.of(value(args, ++i, "--config"));
+                case "--threads" -> {
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, "--threads"));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("--threads needs a number");
+                    }
+                    if (threads < 1) throw new IllegalArgumentException("--threads must be at least 1");
+                }
+                default -> {
+                    if (args[i].startsWith("--") || world != null) {
+                        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                    }
+                    world = Path.of(args[i]);
+                }
+            }
+        }
+
+        if (world == null) throw new IllegalArgumentException("Missing world directory");
+        if (report == null) report = world.resolve(DEFAULT_REPORT);
+        return new Options(world, report.toAbsolutePath(), purge, all, threads, config);
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[index];
+    }
+
+    /**
+     * Holds the world's {@code session.lock} while region files are rewritten, the same lock
+     * a running server holds, so a purge can't run against a live world.
+     */
+    private static final class WorldLock {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private WorldLock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        static WorldLock acquire(Path world) throws IOException {
+            FileChannel channel = FileChannel.open(world.resolve("session.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+
+            if (lock == null) {
+                channel.close();
+                throw new IOException("World is in use (session.lock is held); stop the server before purging");
+            }
+            return new WorldLock(channel, lock);
+        }
+
+        void release() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
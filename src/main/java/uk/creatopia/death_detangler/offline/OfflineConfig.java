@@ -0,0 +1,236 @@
+package uk.creatopia.death_detangler.offline;
+
+import uk.creatopia.death_detangler.util.DetectionRules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the detection rules from the mod's config file ({@code death_detangler-common.toml}) without the game
+ * or its config library, so the offline scanner matches clones the way the world's server does.
+ * <p>
+ * Understands the subset of TOML that Forge writes for this config: comments, {@code key = value} pairs,
+ * quoted strings, integers and arrays, which may span lines. Table headers are skipped, as every rule setting
+ * is at the top level. A setting that is missing or of the wrong kind keeps its default, as Forge would.
+ */
+final class OfflineConfig {
+
+    static final String FILE_NAME = "death_detangler-common.toml";
+
+    private final String text;
+    private int pos;
+
+    private OfflineConfig(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Compiles the detection rules declared in a config file.
+     *
+     * @param file The {@code death_detangler-common.toml} file
+     * @return The compiled rules; defaults for any setting the file lacks
+     * @throws IOException If the file can't be read or is not valid TOML
+     */
+    static DetectionRules load(Path file) throws IOException {
+        Map<String, Object> values;
+        try {
+            values = new OfflineConfig(Files.readString(file)).parse();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed config " + file + ": " + e.getMessage(), e);
+        }
+
+        return DetectionRules.compile(
+                rules(values.get("cloneRules"), DetectionRules.DEFAULT_CLONE_RULES),
+                threshold(values.get("cloneRuleThreshold")),
+                rules(values.get("knockoutRules"), DetectionRules.DEFAULT_KNOCKOUT_RULES),
+                threshold(values.get("knockoutRuleThreshold")));
+    }
+
+    /**
+     * Finds the config of the server a world belongs to, {@code config/} next to the world folder.
+     *
+     * @param world The world directory
+     * @return The config file, or null if there is none
+     */
+    static Path find(Path world) {
+        Path server = world.toAbsolutePath().normalize().getParent();
+        if (server == null) return null;
+
+        Path file = server.resolve("config").resolve(FILE_NAME);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private static List<String> rules(Object value, List<String> defaults) {
+        if (!(value instanceof List<?> list)) return defaults;
+
+        List<String> rules = new ArrayList<>(list.size());
+        for (Object rule : list) {
+            if (rule instanceof String s) {
+                rules.add(s);
+            }
+        }
+        return rules;
+    }
+
+    private static int threshold(Object value) {
+        return value instanceof Long n && n >= 1 && n <= Integer.MAX_VALUE ? n.intValue() : 1;
+    }
+
+    private Map<String, Object> parse() {
+        Map<String, Object> values = new HashMap<>();
+        while (true) {
+            skipBlank(true);
+            if (pos >= text.length()) return values;
+
+            if (text.charAt(pos) == '[') {
+                // A table header; the rule settings are all top-level keys
+                skipLine();
+                continue;
+            }
+
+            String key = text.charAt(pos) == '"' ? readBasicString() : readBare();
+            if (key.isEmpty()) throw error("expected a key");
+            skipBlank(false);
+            expect('=');
+            skipBlank(false);
+            values.put(key, readValue());
+
+            skipBlank(false);
+            if (pos < text.length() && text.charAt(pos) != '\n' && text.charAt(pos) != '\r') {
+                throw error("expected the end of the line");
+            }
+        }
+    }
+
+    private Object readValue() {
+        if (pos >= text.length()) throw error("expected a value");
+
+        char c = text.charAt(pos);
+        if (c == '"') return readBasicString();
+        if (c == '\'') return readLiteralString();
+        if (c == '[') return readArray();
+
+        String bare = readBare();
+        if (bare.isEmpty()) throw error("expected a value");
+        try {
+            return Long.parseLong(bare.replace("_", ""));
+        } catch (NumberFormatException e) {
+            // Booleans, floats and dates aren't rule settings; keep them as text
+            return bare;
+        }
+    }
+
+    private List<Object> readArray() {
+        expect('[');
+        List<Object> list = new ArrayList<>();
+        while (true) {
+            skipBlank(true);
+            if (pos < text.length() && text.charAt(pos) == ']') {
+                pos++;
+                return list;
+            }
+
+            list.add(readValue());
+            skipBlank(true);
+            if (pos < text.length() && text.charAt(pos) == ',') {
+                pos++;
+            } else if (pos >= text.length() || text.charAt(pos) != ']') {
+                throw error("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readBasicString() {
+        expect('"');
+        StringBuilder out = new StringBuilder();
+        while (true) {
+            if (pos >= text.length() || text.charAt(pos) == '\n') throw error("unterminated string");
+
+            char c = text.charAt(pos++);
+            if (c == '"') return out.toString();
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+
+            if (pos >= text.length()) throw error("unterminated string");
+            char escape = text.charAt(pos++);
+            switch (escape) {
+                case '"', '\\' -> out.append(escape);
+                case 'b' -> out.append('\b');
+                case 't' -> out.append('\t');
+                case 'n' -> out.append('\n');
+                case 'f' -> out.append('\f');
+                case 'r' -> out.append('\r');
+                case 'u', 'U' -> {
+                    int digits = escape == 'u' ? 4 : 8;
+                    if (pos + digits > text.length()) throw error("bad unicode escape");
+                    try {
+                        out.appendCodePoint(Integer.parseInt(text, pos, pos + digits, 16));
+                    } catch (IllegalArgumentException e) {
+                        throw error("bad unicode escape");
+                    }
+                    pos += digits;
+                }
+                default -> throw error("bad escape \\" + escape);
+            }
+        }
+    }
+
+    private String readLiteralString() {
+        expect('\'');
+        int end = text.indexOf('\'', pos);
+        int newline = text.indexOf('\n', pos);
+        if (end < 0 || (newline >= 0 && newline < end)) throw error("unterminated string");
+
+        String value = text.substring(pos, end);
+        pos = end + 1;
+        return value;
+    }
+
+    private String readBare() {
+        int start = pos;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (Character.isWhitespace(c) || c == '=' || c == ',' || c == ']' || c == '#') break;
+            pos++;
+        }
+        return text.substring(start, pos);
+    }
+
+    // Skips spaces and comments, and line breaks too if allowed
+    private void skipBlank(boolean newlines) {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '#') {
+                while (pos < text.length() && text.charAt(pos) != '\n') pos++;
+            } else if (c == ' ' || c == '\t' || (newlines && (c == '\n' || c == '\r'))) {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipLine() {
+        while (pos < text.length() && text.charAt(pos) != '\n') pos++;
+    }
+
+    private void expect(char c) {
+        if (pos >= text.length() || text.charAt(pos) != c) throw error("expected '" + c + "'");
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        int line = 1;
+        for (int i = 0; i < pos && i < text.length(); i++) {
+            if (text.charAt(i) == '\n') line++;
+        }
+        return new IllegalArgumentException(message + " on line " + line);
+    }
+}
@@ -0,0 +1,150 @@
+package uk.creatopia.death_detangler.offline;
+
+import uk.creatopia.death_detangler.util.CloneFlags;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the offline scanner's report in the same JSON layout as {@code /death_detangler dump}, one clone at a time.
+ * Written by hand rather than with the report package's writer, which needs Gson and the game classes
+ * the offline tool runs without.
+ * <p>
+ * Output goes to a temporary file next to the target, which is atomically renamed over the target on
+ * {@link #finish}. Closing the writer without finishing discards the temporary file.
+ */
+class OfflineReportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path target;
+    private final Path temp;
+    private final Writer out;
+    private boolean firstEntity = true;
+    private boolean finished = false;
+
+    /**
+     * Opens a report for writing and starts the entity list.
+     *
+     * @param target The report file to create or replace
+     * @param gzip If true, the report is gzip-compressed
+     * @throws IOException If the temporary file can't be created
+     */
+    OfflineReportWriter(Path target, boolean gzip) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        OutputStream stream = Channels.newOutputStream(FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        stream = gzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : new BufferedOutputStream(stream, BUFFER_SIZE);
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        out.write("{\n  \"timestamp\": ");
+        out.write(Long.toString(System.currentTimeMillis() / 1000));
+        out.write(",\n  \"entities\": [");
+    }
+
+    /**
+     * Appends one clone to the report. Offline clones have no tick count, so it is always 0.
+     *
+     * @param uuid The clone's UUID, or "unknown"
+     * @param dimension The dimension id
+     * @param flagMask The clone's {@link CloneFlags} mask
+     * @throws IOException If writing fails
+     */
+    void writeClone(String uuid, String dimension, int flagMask) throws IOException {
+        out.write(firstEntity ? "\n    {\n" : ",\n    {\n");
+        firstEntity = false;
+
+        out.write("      \"uuid\": ");
+        writeString(uuid);
+        out.write(",\n      \"dimension\": ");
+        writeString(dimension);
+        out.write(",\n      \"tickCount\": 0,\n      \"flags\": [");
+        boolean first = true;
+        for (String flag : CloneFlags.decode(flagMask)) {
+            out.write(first ? "\n        " : ",\n        ");
+            first = false;
+            writeString(flag);
+        }
+        out.write(first ? "]\n    }" : "\n      ]\n    }");
+    }
+
+    /**
+     * Writes the report totals, closes the file and moves it into place.
+     *
+     * @param totalFound Total number of clones found
+     * @param dimensions Clone counts keyed by dimension id
+     * @return The path of the written report
+     * @throws IOException If writing or renaming fails
+     */
+    Path finish(int totalFound, Map<String, Integer> dimensions) throws IOException {
+        out.write(firstEntity ? "],\n" : "\n  ],\n");
+        out.write("  \"totalFound\": ");
+        out.write(Integer.toString(totalFound));
+        out.write(",\n  \"dimensions\": {");
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : dimensions.entrySet()) {
+            out.write(first ? "\n    " : ",\n    ");
+            first = false;
+            writeString(entry.getKey());
+            out.write(": ");
+            out.write(Integer.toString(entry.getValue()));
+        }
+        out.write(first ? "}\n}" : "\n  }\n}");
+        out.close();
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finished = true;
+        return target;
+    }
+
+    /**
+     * Closes the writer. If the report was not finished, the partial temporary file is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,360 @@
+package uk.creatopia.death_detangler.offline;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Read access to an Anvil region file ({@code r.<x>.<z>.mca}) through a memory mapping,
+ * and rewriting of the file with some chunks replaced.
+ * <p>
+ * A region that may be rewritten is loaded onto the heap instead of mapped: Windows won't replace a file
+ * while a mapping of it is alive, and Java only releases a mapping once it is garbage collected.
+ * <p>
+ * A region holds 32x32 chunks. The first 4 KiB sector holds one location entry per chunk
+ * (3 bytes sector offset, 1 byte sector count), the second the chunk timestamps. Each chunk
+ * starts with its length and a compression type byte; with bit 128 of the type set, the
+ * compressed data lives in a separate {@code c.<x>.<z>.mcc} file instead.
+ */
+final class RegionFile implements Closeable {
+
+    static final int CHUNKS = 1024;
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int MAX_INLINE_SECTORS = 255;
+
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_ZLIB = 2;
+    private static final int COMPRESSION_NONE = 3;
+    private static final int EXTERNAL_FLAG = 128;
+
+    private final Path path;
+    private final int regionX;
+    private final int regionZ;
+    private final FileChannel channel;
+    private final ByteBuffer map;
+    private final int[] locations = new int[CHUNKS];
+    private final int[] timestamps = new int[CHUNKS];
+
+    private RegionFile(Path path, int regionX, int regionZ, FileChannel channel, ByteBuffer map) {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+        this.channel = channel;
+        this.map = map;
+
+        if (map.capacity() >= 2 * SECTOR_SIZE) {
+            for (int i = 0; i < CHUNKS; i++) {
+                locations[i] = map.getInt(i * 4);
+                timestamps[i] = map.getInt(SECTOR_SIZE + i * 4);
+            }
+        }
+    }
+
+    /**
+     * Maps a region file for reading.
+     *
+     * @param path The {@code .mca} file
+     * @return The open region
+     * @throws IOException If the file can't be opened or its name is not {@code r.<x>.<z>.mca}
+     */
+    static RegionFile open(Path path) throws IOException {
+        int[] coords = parseName(path);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RegionFile(path, coords[0], coords[1], channel, map);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a whole region file onto the heap, holding no file handle or mapping afterwards, so it can be rewritten.
+     *
+     * @param path The {@code .mca} file
+     * @return The loaded region
+     * @throws IOException If the file can't be read or its name is not {@code r.<x>.<z>.mca}
+     */
+    static RegionFile load(Path path) throws IOException {
+        int[] coords = parseName(path);
+        return new RegionFile(path, coords[0], coords[1], null, ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    private static int[] parseName(Path path) throws IOException {
+        String[] parts = path.getFileName().toString().split("\\.");
+        if (parts.length != 4 || !parts[0].equals("r") || !parts[3].equals("mca")) {
+            throw new IOException("Not a region file name: " + path.getFileName());
+        }
+
+        int regionX;
+        int regionZ;
+        try {
+            regionX = Integer.parseInt(parts[1]);
+            regionZ = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a region file name: " + path.getFileName(), e);
+        }
+        return new int[] {regionX, regionZ};
+    }
+
+    /**
+     * @param index Chunk index within the region, {@code x + z * 32}
+     * @return The absolute chunk x coordinate
+     */
+    int chunkX(int index) {
+        return regionX * 32 + (index & 31);
+    }
+
+    /**
+     * @param index Chunk index within the region, {@code x + z * 32}
+     * @return The absolute chunk z coordinate
+     */
+    int chunkZ(int index) {
+        return regionZ * 32 + (index >> 5);
+    }
+
+    /**
+     * @param index Chunk index within the region
+     * @return true if the region holds data for the chunk
+     */
+    boolean hasChunk(int index) {
+        return locations[index] != 0;
+    }
+
+    /**
+     * Reads and decompresses a chunk.
+     *
+     * @param index Chunk index within the region
+     * @return The uncompressed chunk NBT, or null if the chunk is absent
+     * @throws IOException If the chunk is corrupt or uses an unsupported compression
+     */
+    byte[] readChunk(int index) throws IOException {
+        if (!hasChunk(index)) return null;
+
+        int offset = (locations[index] >>> 8) * SECTOR_SIZE;
+        if (offset < 2 * SECTOR_SIZE || offset + 5 > map.capacity()) {
+            throw new IOException("Chunk " + index + " points outside the region file");
+        }
+
+        int length = map.getInt(offset);
+        int type = map.get(offset + 4) & 0xFF;
+
+        byte[] compressed;
+        if ((type & EXTERNAL_FLAG) != 0) {
+            compressed = Files.readAllBytes(externalPath(index));
+            type &= ~EXTERNAL_FLAG;
+        } else {
+            if (length < 1 || offset + 4 + length > map.capacity()) {
+                throw new IOException("Chunk " + index + " has an invalid length " + length);
+            }
+            compressed = new byte[length - 1];
+            map.get(offset + 5, compressed);
+        }
+
+        return decompress(type, compressed);
+    }
+
+    /**
+     * Writes a copy of this region with some chunks replaced, then moves it over the original.
+     * Chunks that are not replaced are copied byte for byte, including references to external chunk files.
+     *
+     * Only a region from {@link #load} can be rewritten.
+     *
+     * @param replacements New uncompressed NBT keyed by chunk index
+     * @throws IOException If writing or moving fails; the original file is left untouched
+     */
+    void rewrite(Map<Integer, byte[]> replacements) throws IOException {
+        if (channel != null) {
+            throw new IllegalStateException("Region " + path.getFileName() + " is memory mapped; load it to rewrite it");
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        List<Path[]> externalMoves = new ArrayList<>();
+        List<Path> externalDeletes = new ArrayList<>();
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_SIZE);
+            int sector = 2;
+            out.position((long) sector * SECTOR_SIZE);
+
+            for (int i = 0; i < CHUNKS; i++) {
+                if (!hasChunk(i)) continue;
+
+                ByteBuffer payload;
+                byte[] replacement = replacements.get(i);
+                if (replacement != null) {
+                    byte[] compressed = compress(replacement);
+                    boolean wasExternal = isExternal(i);
+
+                    if (sectorsFor(5 + compressed.length) > MAX_INLINE_SECTORS) {
+                        // Too big to store inline; keep it in an external chunk file as the game does
+                        Path external = externalPath(i);
+                        Path externalTemp = external.resolveSibling(external.getFileName() + ".tmp");
+                        Files.write(externalTemp, compressed);
+                        externalMoves.add(new Path[] {externalTemp, external});
+
+                        payload = ByteBuffer.allocate(5).putInt(1).put((byte) (COMPRESSION_ZLIB | EXTERNAL_FLAG)).flip();
+                    } else {
+                        if (wasExternal) {
+                            externalDeletes.add(externalPath(i));
+                        }
+                        payload = ByteBuffer.allocate(5 + compressed.length)
+                                .putInt(1 + compressed.length).put((byte) COMPRESSION_ZLIB).put(compressed).flip();
+                    }
+                } else {
+                    payload = storedChunk(i);
+                    // Points outside the file: there is nothing to keep, and the game would discard it as well
+                    if (payload == null) continue;
+                }
+
+                int size = payload.remaining();
+                int sectors = sectorsFor(size);
+
+                while (payload.hasRemaining()) {
+                    out.write(payload);
+                }
+                // Pad to a whole sector
+                int padding = sectors * SECTOR_SIZE - size;
+                if (padding > 0) {
+                    out.write(ByteBuffer.allocate(padding));
+                }
+
+                header.putInt(i * 4, sector << 8 | sectors);
+                header.putInt(SECTOR_SIZE + i * 4, timestamps[i]);
+                sector += sectors;
+            }
+
+            out.position(0);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            for (Path[] move : externalMoves) {
+                Files.deleteIfExists(move[0]);
+            }
+            throw e;
+        }
+
+        for (Path[] move : externalMoves) {
+            moveReplacing(move[0], move[1]);
+        }
+        moveReplacing(temp, path);
+        for (Path external : externalDeletes) {
+            Files.deleteIfExists(external);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gets a chunk's stored bytes, to copy it unchanged. A chunk whose length is invalid is copied as the raw
+     * sectors its location entry claims, as far as the file reaches, so a rewrite never alters what it can't read.
+     *
+     * @param index Chunk index within the region
+     * @return The stored bytes, or null if the chunk's location points outside the file
+     */
+    private ByteBuffer storedChunk(int index) {
+        int offset = (locations[index] >>> 8) * SECTOR_SIZE;
+        if (offset < 2 * SECTOR_SIZE || offset >= map.capacity()) return null;
+
+        if (offset + 4 <= map.capacity()) {
+            int length = map.getInt(offset);
+            if (length >= 1 && offset + 4 + length <= map.capacity()) {
+                return map.slice(offset, 4 + length);
+            }
+        }
+
+        int sectors = Math.max(1, locations[index] & 0xFF);
+        return map.slice(offset, Math.min(sectors * SECTOR_SIZE, map.capacity() - offset));
+    }
+
+    private boolean isExternal(int index) {
+        int offset = (locations[index] >>> 8) * SECTOR_SIZE;
+        return offset + 5 <= map.capacity() && (map.get(offset + 4) & EXTERNAL_FLAG) != 0;
+    }
+
+    private Path externalPath(int index) {
+        return path.resolveSibling("c." + chunkX(index) + "." + chunkZ(index) + ".mcc");
+    }
+
+    private static int sectorsFor(int bytes) {
+        return (bytes + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    }
+
+    private static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] decompress(int type, byte[] compressed) throws IOException {
+        switch (type) {
+            case COMPRESSION_GZIP -> {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                    return in.readAllBytes();
+                }
+            }
+            case COMPRESSION_ZLIB -> {
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressed);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+                    byte[] buffer = new byte[64 * 1024];
+                    while (!inflater.finished()) {
+                        int n = inflater.inflate(buffer);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new IOException("Truncated zlib chunk data");
+                        }
+                        out.write(buffer, 0, n);
+                    }
+                    return out.toByteArray();
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt zlib chunk data", e);
+                } finally {
+                    inflater.end();
+                }
+            }
+            case COMPRESSION_NONE -> {
+                return compressed;
+            }
+            default -> throw new IOException("Unsupported chunk compression type " + type);
+        }
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
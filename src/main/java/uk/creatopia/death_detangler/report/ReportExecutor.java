@@ -0,0 +1,65 @@
+package uk.creatopia.death_detangler.report;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.util.concurrent.*;
+
+/**
+ * Dedicated background thread for report serialization and disk I/O,
+ * so slow disks or huge reports never stall the server tick loop.
+ */
+public class ReportExecutor {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static ExecutorService executor;
+
+    /**
+     * Runs a task on the I/O thread.
+     *
+     * @param task The task to run
+     * @return A future completed with the task's result, or exceptionally if it throws
+     */
+    public static <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        get().execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stops the I/O thread after letting queued writes finish, e.g. when the server stops.
+     */
+    public static synchronized void shutdown() {
+        if (executor == null) return;
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("[DeathDetangler] Report writes did not finish before shutdown");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    private static synchronized ExecutorService get() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DeathDetangler-IO");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
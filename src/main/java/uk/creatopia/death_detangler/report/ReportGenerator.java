@@ -1,57 +1,65 @@
 package uk.creatopia.death_detangler.report;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.world.level.Level;
 import net.minecraft.world.level.storage.LevelResource;
+import uk.creatopia.death_detangler.Config;
 import uk.creatopia.death_detangler.scan.ScanResult;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Generates JSON reports of clone scan results.
+ * Reports are streamed to disk with {@link StreamingReportWriter}, so they never have to fit in memory as a whole.
  */
 public class ReportGenerator {
 
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    /**
+     * Gets the path of the report file in the world root, gzipped if configured.
+     *
+     * @param server The Minecraft server instance
+     * @return The report file path
+     */
+    public static Path getReportPath(MinecraftServer server) {
+        return server.getWorldPath(LevelResource.ROOT)
+                .resolve(Config.reportGzip ? "death_detangler_report.json.gz" : "death_detangler_report.json");
+    }
 
     /**
-     * Generates a JSON report file from a scan result.
-     * 
+     * Generates a JSON report file from a scan result on the report I/O thread.
+     * The result must be a finished {@link ScanResult}, which is immutable and safe to hand over.
+     *
      * @param server The Minecraft server instance
      * @param result The scan result to report
-     * @return The path to the generated report file
-     * @throws IOException If file writing fails
+     * @return A future completed with the path to the generated report file
      */
-    public static Path generateReport(MinecraftServer server, ScanResult result) throws IOException {
-        Map<String, Object> report = new HashMap<>();
-        report.put("timestamp", System.currentTimeMillis() / 1000);
-        report.put("totalFound", result.getTotalFound());
+    public static CompletableFuture<Path> generateReportAsync(MinecraftServer server, ScanResult result) {
+        Path reportPath = getReportPath(server);
+        return ReportExecutor.submit(() -> {
+            writeReport(reportPath, result);
+            return reportPath;
+        });
+    }
 
-        // Per-dimension counts
-        Map<String, Integer> dimensions = new HashMap<>();
-        for (Map.Entry<ResourceKey<Level>, Integer> entry : result.getPerDimension().entrySet()) {
-            dimensions.put(entry.getKey().location().toString(), entry.getValue());
+    /**
+     * Writes a JSON report of a scan result to the given file.
+     * The file is gzip-compressed if its name ends in {@code .gz}.
+     *
+     * @param reportPath The file to write
+     * @param result The scan result to report
+     * @throws IOException If file writing fails
+     */
+    public static void writeReport(Path reportPath, ScanResult result) throws IOException {
+        try (StreamingReportWriter writer = new StreamingReportWriter(reportPath, isGzip(reportPath))) {
+            for (ScanResult.EntityInfo info : result.getEntities()) {
+                writer.writeEntity(info);
+            }
+            writer.finish(result);
         }
-        report.put("dimensions", dimensions);
-
-        // Entity details
-        report.put("entities", result.getEntities());
-
-        // Write to file
-        Path reportPath = server.getWorldPath(LevelResource.ROOT)
-                .resolve("death_detangler_report.json");
-
-        Files.writeString(reportPath, GSON.toJson(report), StandardCharsets.UTF_8);
+    }
 
-        return reportPath;
+    private static boolean isGzip(Path path) {
+        return path.getFileName().toString().endsWith(".gz");
     }
 }
-
@@ -0,0 +1,121 @@
+package uk.creatopia.death_detangler.report;
+
+import com.google.gson.stream.JsonWriter;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import uk.creatopia.death_detangler.scan.ScanResult;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a JSON report one entity at a time, so memory stays bounded no matter how many clones are reported.
+ * Output goes to a temporary file next to the target, which is atomically renamed over the target on
+ * {@link #finish}. Closing the writer without finishing discards the temporary file.
+ */
+public class StreamingReportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path target;
+    private final Path temp;
+    private final Writer out;
+    private final JsonWriter json;
+    private boolean finished = false;
+
+    /**
+     * Opens a report for writing and starts the entity list.
+     *
+     * @param target The report file to create or replace
+     * @param gzip If true, the report is gzip-compressed
+     * @throws IOException If the temporary file can't be created
+     */
+    public StreamingReportWriter(Path target, boolean gzip) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        OutputStream stream = Channels.newOutputStream(FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        stream = gzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : new BufferedOutputStream(stream, BUFFER_SIZE);
+
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.json = new JsonWriter(out);
+        this.json.setIndent("  ");
+
+        json.beginObject();
+        json.name("timestamp").value(System.currentTimeMillis() / 1000);
+        json.name("entities").beginArray();
+    }
+
+    /**
+     * Appends one detected clone to the report.
+     *
+     * @param info The clone to write
+     * @throws IOException If writing fails
+     */
+    public void writeEntity(ScanResult.EntityInfo info) throws IOException {
+        json.beginObject();
+        json.name("uuid").value(info.getUuid());
+        json.name("dimension").value(info.getDimension());
+        json.name("tickCount").value(info.getTickCount());
+        json.name("flags").beginArray();
+        for (String flag : info.getFlags()) {
+            json.value(flag);
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * Writes the totals of a scan, closes the file and moves it into place.
+     *
+     * @param result The finished scan result
+     * @return The path of the written report
+     * @throws IOException If writing or renaming fails
+     */
+    public Path finish(ScanResult result) throws IOException {
+        json.endArray();
+        json.name("totalFound").value(result.getTotalFound());
+
+        json.name("dimensions").beginObject();
+        for (Map.Entry<ResourceKey<Level>, Integer> entry : result.getPerDimension().entrySet()) {
+            json.name(entry.getKey().location().toString()).value(entry.getValue());
+        }
+        json.endObject();
+
+        json.endObject();
+        json.close();
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finished = true;
+        return target;
+    }
+
+    /**
+     * Closes the writer. If the report was not finished, the partial temporary file is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) return;
+
+        // JsonWriter refuses to close an incomplete document, so close the underlying stream instead
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.creatopia.death_detangler.scan;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.Level;
+import uk.creatopia.death_detangler.util.CloneFlags;
+import uk.creatopia.death_detangler.util.CloneHeuristics;
+
+import java.util.UUID;
+
+/**
+ * Immutable copy of the signals the clone heuristics read from a candidate player.
+ * Captured on the server thread; classified on any thread.
+ *
+ * @param uuid The candidate's UUID
+ * @param dimension The dimension the candidate is in
+ * @param noConnection Whether the candidate has no network connection
+ * @param notInPlayerList Whether the candidate is missing from the server player list
+ * @param revivalKeyMask Revival key bits of the candidate's persistent data
+ * @param tickCount The candidate's tick count
+ */
+public record CandidateSnapshot(
+        UUID uuid,
+        ResourceKey<Level> dimension,
+        boolean noConnection,
+        boolean notInPlayerList,
+        int revivalKeyMask,
+        int tickCount
+) {
+
+    /**
+     * Captures a snapshot of a player. Must be called on the server thread.
+     *
+     * @param server The Minecraft server instance
+     * @param dimension The dimension the player is in
+     * @param player The player entity
+     * @return The snapshot
+     */
+    public static CandidateSnapshot capture(MinecraftServer server, ResourceKey<Level> dimension, ServerPlayer player) {
+        return new CandidateSnapshot(
+            player.getUUID(),
+            dimension,
+            player.connection == null,
+            server.getPlayerList().getPlayer(player.getUUID()) == null,
+            CloneHeuristics.getRevivalKeyMask(player.getPersistentData()),
+            player.tickCount
+        );
+    }
+
+    /**
+     * @return The clone flags of this candidate as a bit mask of {@link CloneFlags} values
+     */
+    public int flagMask() {
+        return CloneHeuristics.computeMask(noConnection, notInPlayerList, revivalKeyMask, tickCount);
+    }
+
+    /**
+     * @return true if this candidate is likely an orphan clone
+     */
+    public boolean isOrphan() {
+        return CloneFlags.isOrphan(flagMask());
+    }
+}
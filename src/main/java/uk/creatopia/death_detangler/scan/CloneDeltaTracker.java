@@ -0,0 +1,93 @@
+package uk.creatopia.death_detangler.scan;
+
+import java.util.*;
+
+/**
+ * Remembers the clones found by the last finished scan pass, keyed by UUID, so the next pass
+ * can report a {@link ScanDelta} instead of only a full snapshot.
+ * <p>
+ * A pass reads the set published when it started and builds its own, which replaces it when the pass
+ * finishes. Passes that overlap, e.g. a command scan while a periodic pass is spread over several ticks,
+ * therefore each compare against the set they started from, and the last one to finish wins.
+ * <p>
+ * Server thread only.
+ */
+public class CloneDeltaTracker {
+
+    private record Seen(ScanResult.EntityInfo info, int firstSeenTick) {}
+
+    // Clones of the last finished pass, or null before the first one
+    private static Map<String, Seen> previous = null;
+
+    /**
+     * Starts tracking the clones of a new pass.
+     *
+     * @param tick The current server tick
+     * @return The tracker for the pass
+     */
+    public static Pass begin(int tick) {
+        return new Pass(previous, tick);
+    }
+
+    /**
+     * Forgets the last pass, e.g. when the server stops.
+     */
+    public static void clear() {
+        previous = null;
+    }
+
+    /**
+     * Collects the clones found by one pass and compares them with the pass before.
+     */
+    public static class Pass {
+        private final Map<String, Seen> base;
+        private final int tick;
+        private final Map<String, Seen> current = new HashMap<>();
+        private final List<ScanResult.EntityInfo> added = new ArrayList<>();
+        private int stillPresent = 0;
+        private int oldestAgeTicks = 0;
+
+        private Pass(Map<String, Seen> base, int tick) {
+            this.base = base;
+            this.tick = tick;
+        }
+
+        /**
+         * Records a clone found by the pass.
+         *
+         * @param info The detected clone
+         */
+        public void seen(ScanResult.EntityInfo info) {
+            if (current.containsKey(info.getUuid())) return;
+
+            Seen before = base != null ? base.get(info.getUuid()) : null;
+            if (before == null) {
+                added.add(info);
+                current.put(info.getUuid(), new Seen(info, tick));
+            } else {
+                stillPresent++;
+                oldestAgeTicks = Math.max(oldestAgeTicks, tick - before.firstSeenTick());
+                current.put(info.getUuid(), new Seen(info, before.firstSeenTick()));
+            }
+        }
+
+        /**
+         * Publishes the clones of this pass as the set the next pass compares with.
+         *
+         * @return The changes since the pass this one started from
+         */
+        public ScanDelta finish() {
+            List<ScanResult.EntityInfo> resolved = new ArrayList<>();
+            if (base != null) {
+                for (Map.Entry<String, Seen> entry : base.entrySet()) {
+                    if (!current.containsKey(entry.getKey())) {
+                        resolved.add(entry.getValue().info());
+                    }
+                }
+            }
+
+            previous = current;
+            return new ScanDelta(added, resolved, stillPresent, oldestAgeTicks, base == null);
+        }
+    }
+}
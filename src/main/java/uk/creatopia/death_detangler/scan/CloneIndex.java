@@ -0,0 +1,184 @@
+package uk.creatopia.death_detangler.scan;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of player-type entities that could be orphan clones, grouped by dimension.
+ * Filled from entity join events and emptied on entity leave, so scans only
+ * visit candidates instead of every loaded entity.
+ * <p>
+ * Candidates are also bucketed by chunk and re-bucketed as they cross chunk borders,
+ * so area queries only visit the candidates of the chunks they cover.
+ */
+public class CloneIndex {
+
+    private static final Map<ResourceKey<Level>, Set<ServerPlayer>> candidates = new ConcurrentHashMap<>();
+
+    // Candidates per dimension and chunk, and the chunk each candidate is bucketed under
+    private static final Map<ResourceKey<Level>, Map<Long, Set<ServerPlayer>>> byChunk = new ConcurrentHashMap<>();
+    private static final Map<ServerPlayer, Long> chunkOf = new ConcurrentHashMap<>();
+
+    // Bumped whenever the candidate set changes, so callers can tell if anything happened since they last looked
+    private static volatile long generation = 0;
+
+    /**
+     * Adds a player entity to the candidate index of its dimension.
+     *
+     * @param dimension The dimension the entity joined
+     * @param player The player entity
+     */
+    public static void add(ResourceKey<Level> dimension, ServerPlayer player) {
+        if (candidates.computeIfAbsent(dimension, key -> ConcurrentHashMap.newKeySet()).add(player)) {
+            generation++;
+            long chunk = player.chunkPosition().toLong();
+            chunkOf.put(player, chunk);
+            bucket(dimension, chunk).add(player);
+        }
+    }
+
+    /**
+     * Removes a player entity from the candidate index of its dimension.
+     *
+     * @param dimension The dimension the entity left
+     * @param player The player entity
+     */
+    public static void remove(ResourceKey<Level> dimension, ServerPlayer player) {
+        Set<ServerPlayer> set = candidates.get(dimension);
+        if (set != null && set.remove(player)) {
+            generation++;
+            Long chunk = chunkOf.remove(player);
+            if (chunk != null) {
+                unbucket(dimension, chunk, player);
+            }
+        }
+    }
+
+    /**
+     * Moves an indexed player entity to the bucket of the chunk it entered.
+     * Moving doesn't change the candidate set, so the generation stays the same.
+     *
+     * @param dimension The dimension the entity is in
+     * @param player The player entity
+     * @param chunk The chunk the entity entered, as {@link ChunkPos#toLong()}
+     */
+    public static void move(ResourceKey<Level> dimension, ServerPlayer player, long chunk) {
+        Long previous = chunkOf.get(player);
+        if (previous == null || previous == chunk) return;
+
+        chunkOf.put(player, chunk);
+        unbucket(dimension, previous, player);
+        bucket(dimension, chunk).add(player);
+    }
+
+    /**
+     * Gets the candidates bucketed in a rectangle of chunks.
+     * Visits either the chunks of the rectangle or the occupied buckets of the dimension, whichever are fewer,
+     * so the cost follows the number of candidates in the area rather than the area itself.
+     *
+     * @param dimension The dimension to look up
+     * @param minChunkX Lowest chunk x, inclusive
+     * @param minChunkZ Lowest chunk z, inclusive
+     * @param maxChunkX Highest chunk x, inclusive
+     * @param maxChunkZ Highest chunk z, inclusive
+     * @return The candidates in the rectangle
+     */
+    public static List<ServerPlayer> getCandidatesInChunks(ResourceKey<Level> dimension,
+                                                           int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        Map<Long, Set<ServerPlayer>> buckets = byChunk.get(dimension);
+        if (buckets == null || buckets.isEmpty()) return List.of();
+
+        List<ServerPlayer> result = new ArrayList<>();
+        long area = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (area <= buckets.size()) {
+            for (int x = minChunkX; x <= maxChunkX; x++) {
+                for (int z = minChunkZ; z <= maxChunkZ; z++) {
+                    Set<ServerPlayer> bucket = buckets.get(ChunkPos.asLong(x, z));
+                    if (bucket != null) {
+                        result.addAll(bucket);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, Set<ServerPlayer>> entry : buckets.entrySet()) {
+                long chunk = entry.getKey();
+                int x = ChunkPos.getX(chunk);
+                int z = ChunkPos.getZ(chunk);
+                if (x >= minChunkX && x <= maxChunkX && z >= minChunkZ && z <= maxChunkZ) {
+                    result.addAll(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the candidates currently indexed for a dimension.
+     * The returned view is weakly consistent, so entities may be removed while iterating it.
+     *
+     * @param dimension The dimension to look up
+     * @return The indexed candidates, or an empty set if none
+     */
+    public static Set<ServerPlayer> getCandidates(ResourceKey<Level> dimension) {
+        Set<ServerPlayer> set = candidates.get(dimension);
+        return set != null ? set : Collections.emptySet();
+    }
+
+    /**
+     * Gets the total number of indexed candidates across all dimensions.
+     */
+    public static int size() {
+        int total = 0;
+        for (Set<ServerPlayer> set : candidates.values()) {
+            total += set.size();
+        }
+        return total;
+    }
+
+    /**
+     * Marks the index changed without changing its candidates, for events that can turn a candidate into an orphan,
+     * e.g. its owner logging out.
+     */
+    public static void markChanged() {
+        generation++;
+    }
+
+    /**
+     * Gets the change generation of the index. It increases every time a candidate is added or removed,
+     * or the index is {@link #markChanged marked changed}.
+     */
+    public static long getGeneration() {
+        return generation;
+    }
+
+    private static Set<ServerPlayer> bucket(ResourceKey<Level> dimension, long chunk) {
+        return byChunk.computeIfAbsent(dimension, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(chunk, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    private static void unbucket(ResourceKey<Level> dimension, long chunk, ServerPlayer player) {
+        Map<Long, Set<ServerPlayer>> buckets = byChunk.get(dimension);
+        if (buckets == null) return;
+
+        // Drop empty buckets so the dimension's bucket count follows the number of occupied chunks
+        buckets.computeIfPresent(chunk, (key, bucket) -> {
+            bucket.remove(player);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    /**
+     * Clears the index, e.g. when the server stops.
+     */
+    public static void clear() {
+        candidates.clear();
+        byChunk.clear();
+        chunkOf.clear();
+        generation++;
+    }
+}
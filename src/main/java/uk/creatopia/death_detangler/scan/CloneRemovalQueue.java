@@ -0,0 +1,136 @@
+package uk.creatopia.death_detangler.scan;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import uk.creatopia.death_detangler.Config;
+import uk.creatopia.death_detangler.DeathDetangler;
+import uk.creatopia.death_detangler.metrics.DeathDetanglerMetrics;
+import uk.creatopia.death_detangler.util.CloneHeuristics;
+
+import java.util.*;
+
+/**
+ * Clones waiting to be discarded, grouped by dimension and chunk.
+ * Scans queue the clones they want removed instead of discarding them while they walk the candidates,
+ * and the queue is drained a chunk at a time, at most {@link Config#removalsPerTick} per tick,
+ * so a mass cleanup after a crash is spread over several ticks instead of stalling one.
+ * Since an entry may wait many ticks under the cap, each clone is checked again when it is drained
+ * and kept if it is no longer an orphan.
+ * <p>
+ * Server thread only.
+ */
+public class CloneRemovalQueue {
+
+    private record Pending(Entity clone, UUID owner) {}
+
+    private static final Map<ResourceKey<Level>, Map<Long, List<Pending>>> pending = new LinkedHashMap<>();
+    private static int size = 0;
+
+    // Removals already applied in the current tick, so several drains in one tick share the cap
+    private static int drainTick = -1;
+    private static int drainedThisTick = 0;
+
+    /**
+     * Queues a clone for removal, grouped with the other queued clones of its chunk.
+     *
+     * @param clone The clone to discard
+     */
+    public static void add(Entity clone) {
+        add(clone, null);
+    }
+
+    /**
+     * Queues a clone of a known owner for removal, grouped with the other queued clones of its chunk.
+     * The clone is kept if its owner is back in revival by the time it is drained.
+     *
+     * @param clone The clone to discard
+     * @param owner The clone's owner, or null if unknown
+     */
+    public static void add(Entity clone, UUID owner) {
+        pending.computeIfAbsent(clone.level().dimension(), key -> new LinkedHashMap<>())
+                .computeIfAbsent(clone.chunkPosition().toLong(), key -> new ArrayList<>())
+                .add(new Pending(clone, owner));
+        size++;
+    }
+
+    /**
+     * Discards queued clones, chunk by chunk in the order they were queued, until the queue is empty
+     * or this tick's share of {@link Config#removalsPerTick} is used up.
+     * Clones that were removed or unloaded in the meantime, or that are no longer orphans,
+     * are dropped without counting against the cap.
+     *
+     * @param server The Minecraft server instance
+     * @return The number of clones discarded
+     */
+    public static int drain(MinecraftServer server) {
+        if (size == 0) return 0;
+
+        int tick = server.getTickCount();
+        if (tick != drainTick) {
+            drainTick = tick;
+            drainedThisTick = 0;
+        }
+
+        int limit = Config.removalsPerTick > 0 ? Config.removalsPerTick - drainedThisTick : Integer.MAX_VALUE;
+        int removed = 0;
+
+        Iterator<Map<Long, List<Pending>>> dimensions = pending.values().iterator();
+        while (dimensions.hasNext() && removed < limit) {
+            Map<Long, List<Pending>> chunks = dimensions.next();
+            Iterator<List<Pending>> chunkIterator = chunks.values().iterator();
+
+            while (chunkIterator.hasNext() && removed < limit) {
+                List<Pending> clones = chunkIterator.next();
+
+                // Take from the end so a chunk cut short by the cap keeps the rest of its list
+                while (!clones.isEmpty() && removed < limit) {
+                    Pending entry = clones.remove(clones.size() - 1);
+                    size--;
+                    if (!isStillOrphan(server, entry)) continue;
+
+                    entry.clone.discard();
+                    removed++;
+                    DeathDetanglerMetrics.recordCloneRemoved();
+                }
+
+                if (clones.isEmpty()) {
+                    chunkIterator.remove();
+                }
+            }
+
+            if (chunks.isEmpty()) {
+                dimensions.remove();
+            }
+        }
+
+        drainedThisTick += removed;
+        return removed;
+    }
+
+    private static boolean isStillOrphan(MinecraftServer server, Pending entry) {
+        if (entry.clone.isRemoved()) return false;
+
+        // The owner may have come back, or the player reconnected, while the entry waited
+        if (entry.owner != null && !DeathDetangler.isOwnerGone(server, entry.owner)) return false;
+        return CloneHeuristics.isOrphanClone(server, entry.clone);
+    }
+
+    /**
+     * @return The number of clones still queued for removal
+     */
+    public static int size() {
+        return size;
+    }
+
+    /**
+     * Drops all queued removals, e.g. when the server stops.
+     */
+    public static void clear() {
+        pending.clear();
+        size = 0;
+        drainTick = -1;
+        drainedThisTick = 0;
+    }
+}
@@ -1,15 +1,22 @@
 package uk.creatopia.death_detangler.scan;
 
+import net.minecraft.core.SectionPos;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.level.Level;
-import uk.creatopia.death_detangler.Config;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import uk.creatopia.death_detangler.DeathDetangler;
+import uk.creatopia.death_detangler.lifecycle.CloneRegistry;
+import uk.creatopia.death_detangler.metrics.DeathDetanglerMetrics;
+import uk.creatopia.death_detangler.util.CloneFlags;
 import uk.creatopia.death_detangler.util.CloneHeuristics;
 
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * Scans all dimensions for orphan player clones and optionally removes them.
@@ -30,52 +37,156 @@ public class CloneScanner {
 
     /**
      * Scans all server levels for orphan player clones with detailed reporting.
+     * Only the player entities tracked by {@link CloneIndex} are visited.
+     * The whole pass runs in the calling tick; use {@link ScanPass} directly to spread it over several ticks.
+     * Removals go through the {@link CloneRemovalQueue}, so beyond the per-tick cap they are
+     * applied on later ticks; see {@link ScanResult#getDeferredRemovals()}.
      * 
      * @param server The Minecraft server instance
      * @param remove If true, removes detected clones. If false, only counts them.
      * @return Detailed scan result with per-dimension stats and entity info
      */
     public static ScanResult scanWithDetails(MinecraftServer server, boolean remove) {
+        ScanPass pass = new ScanPass(server, remove);
+        pass.step(0);
+        return pass.getResult();
+    }
+
+    /**
+     * Checks only the clones recorded in the {@link CloneRegistry}, instead of scanning every level.
+     * Known clones that are loaded, whose owner is offline or out of revival, and that pass the same
+     * {@link CloneHeuristics} check as a full scan are counted (and queued for removal if requested);
+     * records whose chunk is loaded without the clone in it are dropped as stale.
+     * Clones in unloaded chunks are left to the join hook, which expires them once their chunk loads.
+     *
+     * @param server The Minecraft server instance
+     * @param remove If true, removes orphaned clones. If false, only counts them.
+     * @return Detailed scan result with per-dimension stats and entity info
+     */
+    public static ScanResult scanKnownClones(MinecraftServer server, boolean remove) {
+        CloneRegistry registry = CloneRegistry.get(server);
+
         int totalCount = 0;
         Map<ResourceKey<Level>, Integer> perDimension = new HashMap<>();
         List<ScanResult.EntityInfo> entities = new ArrayList<>();
 
-        for (ServerLevel level : server.getAllLevels()) {
-            if (Config.verboseLogging) {
-                com.mojang.logging.LogUtils.getLogger().info("Scanning dimension: {}", level.dimension().location());
-            }
+        // Copy, since stale records are unregistered while iterating
+        for (Map.Entry<UUID, CloneRegistry.Record> entry : new ArrayList<>(registry.getRecords().entrySet())) {
+            UUID cloneUUID = entry.getKey();
+            CloneRegistry.Record record = entry.getValue();
+            DeathDetanglerMetrics.recordEntitiesVisited(1);
 
-            int dimensionCount = 0;
+            ServerLevel level = server.getLevel(record.dimension());
+            Entity clone = level != null ? level.getEntity(cloneUUID) : null;
 
-            for (Entity entity : level.getAllEntities()) {
-                if (!(entity instanceof ServerPlayer player)) continue;
+            if (clone == null || clone.isRemoved()) {
+                if (CloneRegistry.isStale(server, cloneUUID, record)) {
+                    registry.unregister(cloneUUID);
+                }
+                continue;
+            }
 
-                if (CloneHeuristics.isOrphanClone(server, player)) {
-                    totalCount++;
-                    dimensionCount++;
+            // Same criteria as a full scan, plus the owner's revival state the registry knows about
+            if (!DeathDetangler.isOwnerGone(server, record.owner())) continue;
+            int mask = CloneHeuristics.getCloneMask(server, clone);
+            if (!CloneFlags.isOrphan(mask)) continue;
 
-                    // Collect entity details
-                    List<String> flags = CloneHeuristics.getCloneFlags(server, player);
-                    entities.add(new ScanResult.EntityInfo(
-                        player.getUUID().toString(),
-                        level.dimension().location().toString(),
-                        player.tickCount,
-                        flags
-                    ));
+            totalCount++;
+            perDimension.merge(record.dimension(), 1, Integer::sum);
+            entities.add(new ScanResult.EntityInfo(
+                cloneUUID.toString(),
+                record.dimension().location().toString(),
+                clone.tickCount,
+                mask
+            ));
+            DeathDetanglerMetrics.recordCloneDetected();
 
-                    if (remove) {
-                        player.discard();
-                        player.remove(Entity.RemovalReason.DISCARDED);
-                    }
-                }
+            if (remove) {
+                // The leave hook unregisters the clone once it is discarded
+                CloneRemovalQueue.add(clone, record.owner());
             }
+        }
+
+        int deferred = 0;
+        if (remove) {
+            CloneRemovalQueue.drain(server);
+            deferred = CloneRemovalQueue.size();
+        }
+        return new ScanResult(totalCount, perDimension, entities, deferred);
+    }
+
+    /**
+     * Scans for orphan clones within a radius of a position in one level.
+     * Only the candidates {@link CloneIndex} has bucketed in the chunks around the position are visited.
+     *
+     * @param server The Minecraft server instance
+     * @param level The level to scan
+     * @param center The centre of the sphere
+     * @param radius The radius in blocks
+     * @param remove If true, removes detected clones. If false, only counts them.
+     * @return Detailed scan result for the area; it has no delta, as it covers only part of the world
+     */
+    public static ScanResult scanNear(MinecraftServer server, ServerLevel level, Vec3 center, double radius, boolean remove) {
+        double radiusSqr = radius * radius;
+        return scanRegion(server, level, new AABB(center, center).inflate(radius),
+                position -> position.distanceToSqr(center) <= radiusSqr, remove);
+    }
+
+    /**
+     * Scans for orphan clones inside a box in one level.
+     * Only the candidates {@link CloneIndex} has bucketed in the chunks the box covers are visited.
+     *
+     * @param server The Minecraft server instance
+     * @param level The level to scan
+     * @param area The box to scan
+     * @param remove If true, removes detected clones. If false, only counts them.
+     * @return Detailed scan result for the area; it has no delta, as it covers only part of the world
+     */
+    public static ScanResult scanArea(MinecraftServer server, ServerLevel level, AABB area, boolean remove) {
+        return scanRegion(server, level, area, area::contains, remove);
+    }
 
-            if (dimensionCount > 0) {
-                perDimension.put(level.dimension(), dimensionCount);
+    private static ScanResult scanRegion(MinecraftServer server, ServerLevel level, AABB bounds,
+                                         Predicate<Vec3> contains, boolean remove) {
+        ResourceKey<Level> dimension = level.dimension();
+        List<ServerPlayer> candidates = CloneIndex.getCandidatesInChunks(dimension,
+                SectionPos.blockToSectionCoord(bounds.minX), SectionPos.blockToSectionCoord(bounds.minZ),
+                SectionPos.blockToSectionCoord(bounds.maxX), SectionPos.blockToSectionCoord(bounds.maxZ));
+        DeathDetanglerMetrics.recordEntitiesVisited(candidates.size());
+
+        int totalCount = 0;
+        int classified = 0;
+        List<ScanResult.EntityInfo> entities = new ArrayList<>();
+
+        // Buckets are whole chunks, so candidates near the edges may still lie outside the area
+        for (ServerPlayer player : candidates) {
+            if (player.isRemoved() || !contains.test(player.position())) continue;
+
+            CandidateSnapshot snapshot = CandidateSnapshot.capture(server, dimension, player);
+            classified++;
+            if (!snapshot.isOrphan()) continue;
+
+            totalCount++;
+            entities.add(new ScanResult.EntityInfo(
+                player.getUUID().toString(),
+                dimension.location().toString(),
+                player.tickCount,
+                snapshot.flagMask()
+            ));
+            DeathDetanglerMetrics.recordCloneDetected();
+
+            if (remove) {
+                CloneRemovalQueue.add(player);
             }
         }
+        DeathDetanglerMetrics.recordCandidatesClassified(classified);
 
-        return new ScanResult(totalCount, perDimension, entities);
+        int deferred = 0;
+        if (remove) {
+            CloneRemovalQueue.drain(server);
+            deferred = CloneRemovalQueue.size();
+        }
+        Map<ResourceKey<Level>, Integer> perDimension = totalCount > 0 ? Map.of(dimension, totalCount) : Map.of();
+        return new ScanResult(totalCount, perDimension, entities, deferred);
     }
 }
-
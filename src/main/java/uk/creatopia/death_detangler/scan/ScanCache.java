@@ -0,0 +1,80 @@
+package uk.creatopia.death_detangler.scan;
+
+import net.minecraft.server.MinecraftServer;
+import uk.creatopia.death_detangler.Config;
+
+/**
+ * The last read-only scan result, shared by the scan, report and dump commands.
+ * <p>
+ * A result is stamped with the server tick it was taken on and the {@link CloneIndex} generation it saw.
+ * It is served again as long as no candidate has joined or left since, and it is not older than
+ * {@link Config#scanCacheMaxAgeTicks}. The age limit covers what the generation can't see, such as
+ * an owner's connection dropping or a clone's persistent data changing.
+ * <p>
+ * Server thread only.
+ */
+public class ScanCache {
+
+    private static ScanResult cached = null;
+    private static int cachedTick = 0;
+    private static long cachedGeneration = -1;
+
+    /**
+     * Gets a read-only scan result, from the cache if it is still fresh, otherwise from a new full pass
+     * which then replaces the cached one.
+     *
+     * @param server The Minecraft server instance
+     * @return The scan result
+     */
+    public static ScanResult get(MinecraftServer server) {
+        ScanResult result = getIfFresh(server);
+        if (result != null) return result;
+
+        result = CloneScanner.scanWithDetails(server, false);
+        // The pass runs within this tick, so the generation it ends on describes what it saw
+        store(server, result, CloneIndex.getGeneration());
+        return result;
+    }
+
+    /**
+     * @param server The Minecraft server instance
+     * @return The cached result, or null if there is none or it is stale
+     */
+    public static ScanResult getIfFresh(MinecraftServer server) {
+        if (cached == null || Config.scanCacheMaxAgeTicks <= 0) return null;
+        if (cachedGeneration != CloneIndex.getGeneration()) return null;
+        if (server.getTickCount() - cachedTick > Config.scanCacheMaxAgeTicks) return null;
+        return cached;
+    }
+
+    /**
+     * Caches the result of a read-only scan.
+     * Results of scans that remove clones must not be stored, as the clones they list are on their way out.
+     *
+     * @param server The Minecraft server instance
+     * @param result The scan result
+     * @param generation The {@link CloneIndex} generation the scan saw; a pass spread over several ticks
+     *                   should pass the generation it started on, so changes during the pass invalidate it
+     */
+    public static void store(MinecraftServer server, ScanResult result, long generation) {
+        cached = result;
+        cachedTick = server.getTickCount();
+        cachedGeneration = generation;
+    }
+
+    /**
+     * @param server The Minecraft server instance
+     * @return Age in ticks of the cached result, or -1 if there is none
+     */
+    public static int getAge(MinecraftServer server) {
+        return cached != null ? server.getTickCount() - cachedTick : -1;
+    }
+
+    /**
+     * Drops the cached result, e.g. after clones were removed, the detection rules changed or the server stops.
+     */
+    public static void invalidate() {
+        cached = null;
+        cachedGeneration = -1;
+    }
+}
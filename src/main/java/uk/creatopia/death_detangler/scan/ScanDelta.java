@@ -0,0 +1,68 @@
+package uk.creatopia.death_detangler.scan;
+
+import java.util.List;
+
+/**
+ * What changed between two scan passes: clones found for the first time, clones from the previous pass
+ * that are gone, and how many are still present and for how long.
+ * Its size follows the churn between passes, not the number of clones in the world.
+ * Deltas are immutable snapshots, like {@link ScanResult}.
+ */
+public class ScanDelta {
+    private final List<ScanResult.EntityInfo> added;
+    private final List<ScanResult.EntityInfo> resolved;
+    private final int stillPresent;
+    private final int oldestAgeTicks;
+    private final boolean baseline;
+
+    public ScanDelta(List<ScanResult.EntityInfo> added, List<ScanResult.EntityInfo> resolved,
+                     int stillPresent, int oldestAgeTicks, boolean baseline) {
+        this.added = List.copyOf(added);
+        this.resolved = List.copyOf(resolved);
+        this.stillPresent = stillPresent;
+        this.oldestAgeTicks = oldestAgeTicks;
+        this.baseline = baseline;
+    }
+
+    /**
+     * @return Clones found by this pass that the previous pass did not find
+     */
+    public List<ScanResult.EntityInfo> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return Clones found by the previous pass that this pass did not find, as the previous pass saw them
+     */
+    public List<ScanResult.EntityInfo> getResolved() {
+        return resolved;
+    }
+
+    /**
+     * @return The number of clones found by both passes
+     */
+    public int getStillPresent() {
+        return stillPresent;
+    }
+
+    /**
+     * @return Ticks since the longest-standing of the still present clones was first found, 0 if there are none
+     */
+    public int getOldestAgeTicks() {
+        return oldestAgeTicks;
+    }
+
+    /**
+     * @return true if there was no previous pass to compare with, so every clone counts as added
+     */
+    public boolean isBaseline() {
+        return baseline;
+    }
+
+    /**
+     * @return true if no clone was added or resolved
+     */
+    public boolean isUnchanged() {
+        return added.isEmpty() && resolved.isEmpty();
+    }
+}
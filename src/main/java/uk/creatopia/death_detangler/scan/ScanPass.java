@@ -0,0 +1,340 @@
+package uk.creatopia.death_detangler.scan;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import uk.creatopia.death_detangler.Config;
+import uk.creatopia.death_detangler.metrics.DeathDetanglerMetrics;
+import uk.creatopia.death_detangler.util.CloneHeuristics;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
+
+/**
+ * A resumable clone scan over all dimensions, run in three phases:
+ * <ol>
+ *     <li>Snapshot: on the server thread, capture a {@link CandidateSnapshot} of every indexed candidate.</li>
+ *     <li>Classify: off the server thread, classify the snapshots in parallel on a fork-join pool.</li>
+ *     <li>Apply: back on the server thread, record the orphans and queue them in the {@link CloneRemovalQueue} if requested,
+ *     re-checking each live entity first, as its snapshot may be several ticks old.</li>
+ * </ol>
+ * Each call to {@link #step(long)} works until its time budget is spent and continues from there
+ * on the next call. Partial results are merged into a single {@link ScanResult} once the pass is finished,
+ * together with a {@link ScanDelta} against the previous finished pass.
+ */
+public class ScanPass {
+
+    // Below this many snapshots, classifying inline is cheaper than handing off to the pool
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private static final ForkJoinPool CLASSIFY_POOL = new ForkJoinPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("DeathDetangler-Classify-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        },
+        null,
+        false
+    );
+
+    private enum Phase { SNAPSHOT, CLASSIFY, APPLY, DONE }
+
+    private final MinecraftServer server;
+    private final boolean remove;
+    private final Iterator<ServerLevel> levels;
+    private Phase phase = Phase.SNAPSHOT;
+    private long serverThreadNanos = 0;
+
+    // Snapshot phase
+    private ServerLevel currentLevel;
+    private Iterator<ServerPlayer> cursor;
+    private long levelNanos = 0;
+    private final List<CandidateSnapshot> snapshots = new ArrayList<>();
+
+    // Classify phase
+    private ForkJoinTask<List<CandidateSnapshot>> classification;
+
+    // Apply phase
+    private List<CandidateSnapshot> orphans;
+    private int applyIndex = 0;
+
+    private final Tally tally = new Tally();
+    private int deferredRemovals = 0;
+    private final CloneDeltaTracker.Pass deltaPass;
+    private ScanDelta delta;
+
+    /**
+     * Creates a new pass over the levels currently loaded on the server.
+     *
+     * @param server The Minecraft server instance
+     * @param remove If true, removes detected clones. If false, only counts them.
+     */
+    public ScanPass(MinecraftServer server, boolean remove) {
+        this.server = server;
+        this.remove = remove;
+        this.deltaPass = CloneDeltaTracker.begin(server.getTickCount());
+
+        // Copy the level list so dimensions added between ticks can't break the cursor
+        List<ServerLevel> snapshot = new ArrayList<>();
+        for (ServerLevel level : server.getAllLevels()) {
+            snapshot.add(level);
+        }
+        this.levels = snapshot.iterator();
+    }
+
+    /**
+     * Advances the pass until it finishes or the time budget is used up.
+     * With a budget, the pass yields while classification runs in the background;
+     * without one, it waits for classification to finish.
+     *
+     * @param budgetNanos Maximum time to spend in this call, in nanoseconds. 0 or less means unbounded.
+     * @return true if the pass is finished and {@link #getResult()} is available
+     */
+    public boolean step(long budgetNanos) {
+        if (phase == Phase.DONE) return true;
+
+        long start = System.nanoTime();
+        try {
+            return advance(start + budgetNanos, budgetNanos);
+        } finally {
+            serverThreadNanos += System.nanoTime() - start;
+            if (phase == Phase.DONE) {
+                DeathDetanglerMetrics.recordScan(serverThreadNanos);
+            }
+        }
+    }
+
+    private boolean advance(long deadline, long budgetNanos) {
+        while (phase != Phase.DONE) {
+            switch (phase) {
+                case SNAPSHOT -> {
+                    if (!snapshotStep(deadline, budgetNanos)) return false;
+                    startClassification();
+                    phase = Phase.CLASSIFY;
+                }
+                case CLASSIFY -> {
+                    if (budgetNanos > 0 && !classification.isDone()) return false;
+                    orphans = classification.join();
+                    classification = null;
+                    phase = Phase.APPLY;
+                }
+                case APPLY -> {
+                    if (!applyStep(deadline, budgetNanos)) return false;
+                    finishRemovals();
+                    delta = deltaPass.finish();
+                    phase = Phase.DONE;
+                }
+                default -> throw new IllegalStateException("Unexpected phase " + phase);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true once every dimension has been visited
+     */
+    public boolean isFinished() {
+        return phase == Phase.DONE;
+    }
+
+    /**
+     * Gets the merged result of the pass.
+     *
+     * @return The scan result
+     * @throws IllegalStateException If the pass has not finished yet
+     */
+    public ScanResult getResult() {
+        if (phase != Phase.DONE) {
+            throw new IllegalStateException("Scan pass has not finished");
+        }
+        return tally.toResult(deferredRemovals, delta);
+    }
+
+    /**
+     * Classifies snapshots, in parallel on the classification pool when there are enough of them.
+     * Touches no game state, so it may run on any thread.
+     *
+     * @param snapshots The candidates to classify
+     * @return The orphan clones among them, in the same order
+     */
+    static List<CandidateSnapshot> classify(List<CandidateSnapshot> snapshots) {
+        if (snapshots.size() < PARALLEL_THRESHOLD) {
+            return classifySequential(snapshots);
+        }
+        return CLASSIFY_POOL.submit(() -> classifyParallel(snapshots)).join();
+    }
+
+    private static List<CandidateSnapshot> classifySequential(List<CandidateSnapshot> snapshots) {
+        List<CandidateSnapshot> result = new ArrayList<>();
+        for (CandidateSnapshot snapshot : snapshots) {
+            if (snapshot.isOrphan()) {
+                result.add(snapshot);
+            }
+        }
+        return result;
+    }
+
+    private static List<CandidateSnapshot> classifyParallel(List<CandidateSnapshot> snapshots) {
+        // Runs inside CLASSIFY_POOL, so the parallel stream forks onto its workers
+        return snapshots.parallelStream()
+            .filter(CandidateSnapshot::isOrphan)
+            .collect(Collectors.toList());
+    }
+
+    private void startClassification() {
+        List<CandidateSnapshot> captured = List.copyOf(snapshots);
+        snapshots.clear();
+        DeathDetanglerMetrics.recordCandidatesClassified(captured.size());
+
+        if (captured.size() < PARALLEL_THRESHOLD) {
+            classification = ForkJoinTask.adapt(() -> classifySequential(captured));
+            classification.invoke();
+        } else {
+            classification = CLASSIFY_POOL.submit(() -> classifyParallel(captured));
+        }
+    }
+
+    private boolean snapshotStep(long deadline, long budgetNanos) {
+        long levelStart = System.nanoTime();
+        int visited = 0;
+        try {
+            while (true) {
+                if (cursor == null || !cursor.hasNext()) {
+                    long now = System.nanoTime();
+                    levelNanos += now - levelStart;
+                    levelStart = now;
+                    if (!nextLevel()) return true;
+                    continue;
+                }
+
+                ServerPlayer player = cursor.next();
+                visited++;
+
+                // The cursor may outlive entities between ticks
+                if (player.isRemoved()) {
+                    CloneIndex.remove(currentLevel.dimension(), player);
+                } else {
+                    snapshots.add(CandidateSnapshot.capture(server, currentLevel.dimension(), player));
+                }
+
+                if (budgetNanos > 0 && System.nanoTime() >= deadline) {
+                    levelNanos += System.nanoTime() - levelStart;
+                    return false;
+                }
+            }
+        } finally {
+            DeathDetanglerMetrics.recordEntitiesVisited(visited);
+        }
+    }
+
+    private boolean nextLevel() {
+        // Close out the time spent on the previous dimension
+        if (currentLevel != null) {
+            DeathDetanglerMetrics.recordDimensionScan(currentLevel.dimension().location().toString(), levelNanos);
+        }
+        levelNanos = 0;
+
+        if (!levels.hasNext()) {
+            currentLevel = null;
+            cursor = null;
+            return false;
+        }
+
+        currentLevel = levels.next();
+        cursor = CloneIndex.getCandidates(currentLevel.dimension()).iterator();
+
+        if (Config.verboseLogging) {
+            com.mojang.logging.LogUtils.getLogger().info("Scanning dimension: {}", currentLevel.dimension().location());
+        }
+        return true;
+    }
+
+    private boolean applyStep(long deadline, long budgetNanos) {
+        while (applyIndex < orphans.size()) {
+            apply(orphans.get(applyIndex++));
+
+            if (budgetNanos > 0 && System.nanoTime() >= deadline) {
+                return applyIndex >= orphans.size();
+            }
+        }
+        return true;
+    }
+
+    private void finishRemovals() {
+        if (!remove) return;
+
+        // Apply this tick's share of the queued removals; the rest are drained on the following ticks
+        CloneRemovalQueue.drain(server);
+        deferredRemovals = CloneRemovalQueue.size();
+    }
+
+    private void apply(CandidateSnapshot orphan) {
+        Entity player = null;
+        if (remove) {
+            // The entity may have gone away while the snapshot was being classified
+            ServerLevel level = server.getLevel(orphan.dimension());
+            player = level != null ? level.getEntity(orphan.uuid()) : null;
+            if (player == null || player.isRemoved()) return;
+
+            // The snapshot may be several ticks old by now: the player may have reconnected or their owner come back
+            if (!CloneHeuristics.isOrphanClone(server, player)) return;
+        }
+
+        ScanResult.EntityInfo info = tally.add(orphan);
+        deltaPass.seen(info);
+
+        if (player != null) {
+            CloneRemovalQueue.add(player);
+        }
+    }
+
+    /**
+     * Counts the orphans a pass reports and collects their details.
+     * Needs no server, so the scan benchmark runs the same code as the apply phase.
+     */
+    static final class Tally {
+        private int totalCount = 0;
+        private final Map<ResourceKey<Level>, Integer> perDimension = new HashMap<>();
+        private final List<ScanResult.EntityInfo> entities = new ArrayList<>();
+
+        /**
+         * Records one orphan.
+         *
+         * @param orphan The orphan's snapshot
+         * @return The details recorded for the orphan
+         */
+        ScanResult.EntityInfo add(CandidateSnapshot orphan) {
+            totalCount++;
+            DeathDetanglerMetrics.recordCloneDetected();
+            perDimension.merge(orphan.dimension(), 1, Integer::sum);
+
+            // Collect entity details; flag names are decoded only when reported
+            ScanResult.EntityInfo info = new ScanResult.EntityInfo(
+                orphan.uuid().toString(),
+                orphan.dimension().location().toString(),
+                orphan.tickCount(),
+                orphan.flagMask()
+            );
+            entities.add(info);
+            return info;
+        }
+
+        /**
+         * @param deferredRemovals Removals still queued when the pass finished
+         * @param delta Changes since the previous finished pass, or null
+         * @return The recorded orphans as a scan result
+         */
+        ScanResult toResult(int deferredRemovals, ScanDelta delta) {
+            return new ScanResult(totalCount, perDimension, entities, deferredRemovals, delta);
+        }
+    }
+}
@@ -2,22 +2,37 @@ package uk.creatopia.death_detangler.scan;
 
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.level.Level;
+import uk.creatopia.death_detangler.util.CloneFlags;
 
 import java.util.*;
 
 /**
  * Result of a clone scan operation, containing per-dimension statistics
  * and detailed entity information.
+ * Results are immutable snapshots, so they can be handed to other threads once created.
  */
 public class ScanResult {
     private final int totalFound;
     private final Map<ResourceKey<Level>, Integer> perDimension;
     private final List<EntityInfo> entities;
+    private final int deferredRemovals;
+    private final ScanDelta delta;
 
     public ScanResult(int totalFound, Map<ResourceKey<Level>, Integer> perDimension, List<EntityInfo> entities) {
+        this(totalFound, perDimension, entities, 0);
+    }
+
+    public ScanResult(int totalFound, Map<ResourceKey<Level>, Integer> perDimension, List<EntityInfo> entities, int deferredRemovals) {
+        this(totalFound, perDimension, entities, deferredRemovals, null);
+    }
+
+    public ScanResult(int totalFound, Map<ResourceKey<Level>, Integer> perDimension, List<EntityInfo> entities,
+                      int deferredRemovals, ScanDelta delta) {
         this.totalFound = totalFound;
-        this.perDimension = perDimension;
-        this.entities = entities;
+        this.perDimension = Collections.unmodifiableMap(new HashMap<>(perDimension));
+        this.entities = List.copyOf(entities);
+        this.deferredRemovals = deferredRemovals;
+        this.delta = delta;
     }
 
     public int getTotalFound() {
@@ -32,6 +47,21 @@ public class ScanResult {
         return entities;
     }
 
+    /**
+     * @return The number of clones still queued in {@link CloneRemovalQueue} when the scan finished,
+     *         to be removed over the following ticks
+     */
+    public int getDeferredRemovals() {
+        return deferredRemovals;
+    }
+
+    /**
+     * @return The changes since the previous full pass, or null if the scan only checked part of the world
+     */
+    public ScanDelta getDelta() {
+        return delta;
+    }
+
     /**
      * Information about a detected clone entity.
      */
@@ -39,13 +69,13 @@ public class ScanResult {
         private final String uuid;
         private final String dimension;
         private final int tickCount;
-        private final List<String> flags;
+        private final int flagMask;
 
-        public EntityInfo(String uuid, String dimension, int tickCount, List<String> flags) {
+        public EntityInfo(String uuid, String dimension, int tickCount, int flagMask) {
             this.uuid = uuid;
             this.dimension = dimension;
             this.tickCount = tickCount;
-            this.flags = flags;
+            this.flagMask = flagMask;
         }
 
         public String getUuid() {
@@ -60,8 +90,18 @@ public class ScanResult {
             return tickCount;
         }
 
+        /**
+         * @return The clone flags as a bit mask of {@link CloneFlags} values
+         */
+        public int getFlagMask() {
+            return flagMask;
+        }
+
+        /**
+         * Decodes the flag mask into readable flag names.
+         */
         public List<String> getFlags() {
-            return flags;
+            return CloneFlags.decode(flagMask);
         }
     }
 }
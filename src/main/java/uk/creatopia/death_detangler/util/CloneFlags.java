@@ -0,0 +1,187 @@
+package uk.creatopia.death_detangler.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Bit flags describing why an entity looks like an orphan clone.
+ * Heuristics build a primitive mask from these so periodic scans allocate nothing;
+ * the readable flag names are only decoded when a report needs them.
+ * Uses no game classes, so the offline region scanner can share it.
+ */
+public class CloneFlags {
+
+    public static final int NO_CONNECTION = 1;
+    public static final int NOT_IN_PLAYER_LIST = 1 << 1;
+    public static final int HARDCORE_REVIVAL = 1 << 2;
+    public static final int REVIVAL = 1 << 3;
+    public static final int CORPSE = 1 << 4;
+    public static final int GRAVE = 1 << 5;
+    public static final int IS_REVIVAL_CLONE = 1 << 6;
+    public static final int HC_REVIVAL_FIX_CLONE = 1 << 7;
+    public static final int REVIVAL_TAG = 1 << 8;
+    public static final int HIGH_TICK_COUNT = 1 << 9;
+
+    /**
+     * Minimum number of flags for an entity to count as an orphan clone.
+     */
+    public static final int ORPHAN_THRESHOLD = 2;
+
+    // Persistent data keys with their own report flag, in bit order from HARDCORE_REVIVAL
+    private static final String[] REVIVAL_KEYS = {
+        "HardcoreRevival",
+        "revival",
+        "corpse",
+        "grave",
+        "IsRevivalClone",
+        "HCRevivalFixClone"
+    };
+
+    // Keys the mod writes itself, on live players as well as clones, so never evidence of an orphan
+    private static final Set<String> BOOKKEEPING_KEYS = Set.of(
+        "DeathDetanglerOwner",
+        "DeathDetanglerClone"
+    );
+
+    // Marks the join hook and Hardcore Revival leave on a clone; a death with one of these is never real
+    private static final String[] CLONE_MARK_KEYS = {
+        "DeathDetanglerClone",
+        "IsRevivalClone"
+    };
+    private static final String REVIVAL_IN_PROGRESS_TAG = "revival_in_progress";
+
+    // Flag names, indexed by bit position
+    private static final String[] NAMES = {
+        "no_connection",
+        "not_in_player_list",
+        "hardcore_revival",
+        "revival",
+        "corpse",
+        "grave",
+        "is_revival_clone",
+        "hc_revival_fix_clone",
+        "revival_tag",
+        "high_tick_count"
+    };
+
+    /**
+     * Gets the mask bit a revival marker key sets: its own report flag if it has one, otherwise {@link #REVIVAL_TAG}.
+     * The mod's own bookkeeping keys are never markers.
+     *
+     * @param key The persistent data key
+     * @return The mask bit, 0 for a bookkeeping key
+     */
+    static int revivalKeyBit(String key) {
+        if (BOOKKEEPING_KEYS.contains(key)) return 0;
+
+        for (int i = 0; i < REVIVAL_KEYS.length; i++) {
+            if (REVIVAL_KEYS[i].equals(key)) {
+                return HARDCORE_REVIVAL << i;
+            }
+        }
+        return REVIVAL_TAG;
+    }
+
+    /**
+     * Checks whether persistent data and tags mark an entity as a clone outright: set by the join hook,
+     * flagged by Hardcore Revival, or in the middle of a revival.
+     *
+     * @param isTrue Reads a persistent data key as a boolean
+     * @param tags The entity's scoreboard tags
+     * @return true if the entity carries a clone mark
+     */
+    public static boolean isMarkedClone(Predicate<String> isTrue, Set<String> tags) {
+        if (tags.contains(REVIVAL_IN_PROGRESS_TAG)) return true;
+
+        for (String key : CLONE_MARK_KEYS) {
+            if (isTrue.test(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the clone flag mask from already-gathered signals.
+     *
+     * @param noConnection Whether the player has no network connection
+     * @param notInPlayerList Whether the player is missing from the server player list
+     * @param revivalKeyMask The revival key bits of the player's persistent data
+     * @param tickCount The player's tick count
+     * @return Flag mask indicating clone status
+     */
+    public static int computeMask(boolean noConnection, boolean notInPlayerList, int revivalKeyMask, int tickCount) {
+        int mask = 0;
+
+        // 1. Not actually connected
+        if (noConnection) {
+            mask |= NO_CONNECTION;
+        }
+
+        // 2. Not in player list
+        if (notInPlayerList) {
+            mask |= NOT_IN_PLAYER_LIST;
+        }
+
+        // 3. Has revival / corpse related tags; the generic marker only counts for keys without a flag of their own,
+        // so a single marker key is one signal and never enough on its own
+        int keyBits = revivalKeyMask & ~REVIVAL_TAG;
+        mask |= keyBits != 0 ? keyBits : revivalKeyMask;
+
+        // 4. Exists too long without a connection
+        if (noConnection && tickCount > 200) {
+            mask |= HIGH_TICK_COUNT;
+        }
+
+        return mask;
+    }
+
+    /**
+     * Gets the revival key bits for persistent data, according to the clone rules of {@link DetectionRules}.
+     *
+     * @param keys The keys present in the persistent data
+     * @param isTrue Reads a persistent data key as a boolean, for {@code flag} rules
+     * @return Mask of revival key bits, 0 if none are present
+     */
+    public static int getRevivalKeyMask(Set<String> keys, Predicate<String> isTrue) {
+        if (keys.isEmpty()) return 0;
+        return DetectionRules.current().revivalKeyMask(keys, isTrue);
+    }
+
+    /**
+     * Determines whether an entity type id names a revival entity, e.g. {@code hardcorerevival:...},
+     * according to the {@code type} rules of {@link DetectionRules}.
+     *
+     * @param id The entity type id
+     * @return true if the id looks like a revival entity type
+     */
+    public static boolean isRevivalTypeId(String id) {
+        return DetectionRules.current().isRevivalType(id);
+    }
+
+    /**
+     * Determines whether a flag mask is enough to classify an entity as an orphan clone.
+     *
+     * @param mask The flag mask
+     * @return true if at least {@link #ORPHAN_THRESHOLD} flags are set
+     */
+    public static boolean isOrphan(int mask) {
+        return Integer.bitCount(mask) >= ORPHAN_THRESHOLD;
+    }
+
+    /**
+     * Decodes a flag mask into readable flag names, in the order the heuristics check them.
+     *
+     * @param mask The flag mask
+     * @return List of flag strings indicating clone status
+     */
+    public static List<String> decode(int mask) {
+        List<String> flags = new ArrayList<>(Integer.bitCount(mask));
+        for (int bit = 0; bit < NAMES.length; bit++) {
+            if ((mask & (1 << bit)) != 0) {
+                flags.add(NAMES[bit]);
+            }
+        }
+        return flags;
+    }
+}
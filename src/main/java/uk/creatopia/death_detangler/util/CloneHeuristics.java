@@ -3,9 +3,7 @@ package uk.creatopia.death_detangler.util;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
-
-import java.util.ArrayList;
-import java.util.List;
+import net.minecraft.world.entity.Entity;
 
 /**
  * Heuristic detection logic for identifying orphan player clones.
@@ -14,74 +12,108 @@ import java.util.List;
 public class CloneHeuristics {
 
     /**
-     * Determines if a player entity is likely an orphan clone that should be removed.
-     * Uses multiple heuristics to avoid false positives.
-     * 
+     * Determines if a live entity is likely an orphan clone that should be removed.
+     * The same mask as a scan snapshot, read from the entity as it is now; use this to re-check
+     * a clone found by an earlier snapshot before acting on it. Must be called on the server thread.
+     *
      * @param server The Minecraft server instance
-     * @param player The player entity to check
-     * @return true if the player is likely an orphan clone
+     * @param entity The entity to check
+     * @return true if the entity is likely an orphan clone
      */
-    public static boolean isOrphanClone(MinecraftServer server, ServerPlayer player) {
-        return getCloneFlags(server, player).size() >= 2;
+    public static boolean isOrphanClone(MinecraftServer server, Entity entity) {
+        return CloneFlags.isOrphan(getCloneMask(server, entity));
     }
 
     /**
-     * Gets the list of flags that indicate this player is a clone.
-     * 
+     * Gets the flags that indicate a live entity is a clone as a bit mask of {@link CloneFlags} values.
+     * Entities other than server players never have a network connection.
+     *
      * @param server The Minecraft server instance
-     * @param player The player entity to check
-     * @return List of flag strings indicating clone status
+     * @param entity The entity to check
+     * @return Flag mask indicating clone status
      */
-    public static List<String> getCloneFlags(MinecraftServer server, ServerPlayer player) {
-        List<String> flags = new ArrayList<>();
+    public static int getCloneMask(MinecraftServer server, Entity entity) {
+        return computeMask(
+            !(entity instanceof ServerPlayer player) || player.connection == null,
+            server.getPlayerList().getPlayer(entity.getUUID()) == null,
+            entity.getPersistentData(),
+            entity.tickCount
+        );
+    }
 
-        // 1. Not actually connected
-        if (player.connection == null) {
-            flags.add("no_connection");
-        }
+    /**
+     * Computes the clone flag mask from already-gathered signals.
+     *
+     * @param noConnection Whether the player has no network connection
+     * @param notInPlayerList Whether the player is missing from the server player list
+     * @param tag The player's persistent data
+     * @param tickCount The player's tick count
+     * @return Flag mask indicating clone status
+     */
+    public static int computeMask(boolean noConnection, boolean notInPlayerList, CompoundTag tag, int tickCount) {
+        return computeMask(noConnection, notInPlayerList, getRevivalKeyMask(tag), tickCount);
+    }
 
-        // 2. Not in player list
-        if (server.getPlayerList().getPlayer(player.getUUID()) == null) {
-            flags.add("not_in_player_list");
-        }
+    /**
+     * Computes the clone flag mask from already-gathered signals, with the persistent data
+     * reduced to its revival key bits by {@link #getRevivalKeyMask}. Touches no game state,
+     * so it is safe to call off the server thread.
+     *
+     * @param noConnection Whether the player has no network connection
+     * @param notInPlayerList Whether the player is missing from the server player list
+     * @param revivalKeyMask The revival key bits of the player's persistent data
+     * @param tickCount The player's tick count
+     * @return Flag mask indicating clone status
+     */
+    public static int computeMask(boolean noConnection, boolean notInPlayerList, int revivalKeyMask, int tickCount) {
+        return CloneFlags.computeMask(noConnection, notInPlayerList, revivalKeyMask, tickCount);
+    }
 
-        // 3. Has revival / corpse related tags
-        CompoundTag tag = player.getPersistentData();
-        boolean hasRevivalTag = false;
-        if (tag.contains("HardcoreRevival")) {
-            flags.add("hardcore_revival");
-            hasRevivalTag = true;
-        }
-        if (tag.contains("revival")) {
-            flags.add("revival");
-            hasRevivalTag = true;
-        }
-        if (tag.contains("corpse")) {
-            flags.add("corpse");
-            hasRevivalTag = true;
-        }
-        if (tag.contains("grave")) {
-            flags.add("grave");
-            hasRevivalTag = true;
-        }
-        if (tag.contains("IsRevivalClone")) {
-            flags.add("is_revival_clone");
-            hasRevivalTag = true;
-        }
-        if (tag.contains("HCRevivalFixClone")) {
-            flags.add("hc_revival_fix_clone");
-            hasRevivalTag = true;
-        }
-        if (hasRevivalTag) {
-            flags.add("revival_tag");
-        }
+    /**
+     * Gets the {@link CloneFlags} bits of the revival markers present in persistent data,
+     * as declared by the clone {@link DetectionRules}.
+     *
+     * @param tag The persistent data
+     * @return Mask of revival key bits, 0 if none are present
+     */
+    public static int getRevivalKeyMask(CompoundTag tag) {
+        if (tag.isEmpty()) return 0;
+        return DetectionRules.current().revivalKeyMask(tag.getAllKeys(), tag::getBoolean);
+    }
 
-        // 4. Exists too long without a connection
-        if (player.tickCount > 200) {
-            flags.add("high_tick_count");
-        }
+    /**
+     * Checks an entity against the clone {@link DetectionRules}, adding its persistent data and tags
+     * to the score its type already earned.
+     *
+     * @param entity The entity to check
+     * @param typeScore The score of the entity's type, from {@link EntityTypeClassifier#typeScore}
+     * @return true if the entity carries enough clone markers
+     */
+    public static boolean hasCloneMarkers(Entity entity, int typeScore) {
+        CompoundTag data = entity.getPersistentData();
+        return DetectionRules.current().isClone(typeScore, data.getAllKeys(), data::getBoolean, entity.getTags());
+    }
+
+    /**
+     * Checks an entity's persistent data and tags for the marks a clone carries outright,
+     * for when its revival marker capability is missing or not set.
+     *
+     * @param entity The entity to check
+     * @return true if the entity is marked as a clone
+     */
+    public static boolean isMarkedClone(Entity entity) {
+        CompoundTag data = entity.getPersistentData();
+        return CloneFlags.isMarkedClone(data::getBoolean, entity.getTags());
+    }
 
-        return flags;
+    /**
+     * Checks a player's persistent data and tags against the knockout {@link DetectionRules}.
+     *
+     * @param player The player to check
+     * @return true if the player carries enough knockout markers
+     */
+    public static boolean hasKnockoutMarkers(ServerPlayer player) {
+        CompoundTag data = player.getPersistentData();
+        return DetectionRules.current().isKnockedOut(data.getAllKeys(), data::getBoolean, player.getTags());
     }
 }
-
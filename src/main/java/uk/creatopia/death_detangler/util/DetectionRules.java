@@ -0,0 +1,273 @@
+package uk.creatopia.death_detangler.util;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled clone and knockout detection rules.
+ * <p>
+ * Rules are declared as strings of the form {@code <kind>:<name>[=<weight>]}, where kind is one of
+ * <ul>
+ *     <li>{@code nbt}: the persistent data contains the key</li>
+ *     <li>{@code flag}: the persistent data contains the key and it is true</li>
+ *     <li>{@code tag}: the entity has the scoreboard tag</li>
+ *     <li>{@code type}: the entity type's registry name contains the text (case-insensitive)</li>
+ * </ul>
+ * An entity matches when the weights of its matching rules add up to the threshold.
+ * All rules are compiled into one table keyed by persistent data key, so each check is a single pass
+ * over the entity's own keys, however many rules there are.
+ * <p>
+ * Clone {@code nbt} and {@code flag} rules with a weight of 0 or more are also the revival markers
+ * periodic scans look for (the key's own report flag, or {@link CloneFlags#REVIVAL_TAG} for keys without one),
+ * except for the mod's own bookkeeping keys. A weight of 0 makes a key a scan marker without counting towards
+ * the clone score.
+ * <p>
+ * Uses no game classes, so the offline region scanner shares the defaults.
+ */
+public class DetectionRules {
+
+    public static final List<String> DEFAULT_CLONE_RULES = List.of(
+        "nbt:HardcoreRevival=1",
+        "nbt:is_downed=1",
+        "nbt:isRevivalClone=1",
+        "nbt:downed=1",
+        "nbt:revive_clone=1",
+        "nbt:DeathDetanglerOwner=1",
+        "flag:IsRevivalClone=1",
+        "nbt:IsRevivalClone=0",
+        "nbt:HCRevivalFixClone=0",
+        "nbt:revival=0",
+        "nbt:corpse=0",
+        "nbt:grave=0",
+        "type:reviv=1",
+        "type:hardcorerevival=1"
+    );
+
+    public static final List<String> DEFAULT_KNOCKOUT_RULES = List.of(
+        "nbt:HardcoreRevival=1",
+        "nbt:is_downed=1",
+        "nbt:isKnockedOut=1",
+        "nbt:knocked_out=1",
+        "flag:HardcoreRevivalKnockedOut=1",
+        "tag:knocked_out=1",
+        "tag:hardcorerevival_knocked_out=1"
+    );
+
+    private static final Pattern RULE = Pattern.compile("(nbt|flag|tag|type):([^=]+?)(?:=(-?\\d{1,6}))?");
+
+    private static final int CLONE = 0;
+    private static final int KNOCKOUT = 1;
+
+    private static volatile DetectionRules current = compile(DEFAULT_CLONE_RULES, 1, DEFAULT_KNOCKOUT_RULES, 1);
+
+    // Everything a persistent data key contributes, per target, and its scan marker bits
+    private static final class KeyRule {
+        final int[] present = new int[2];
+        final int[] whenTrue = new int[2];
+        int flagBits;
+        int flagBitsWhenTrue;
+    }
+
+    private final Map<String, KeyRule> keyRules = new HashMap<>();
+    private final Map<String, int[]> tagRules = new HashMap<>();
+    private final List<String> typePatterns = new ArrayList<>();
+    private final List<int[]> typeWeights = new ArrayList<>();
+    private final int[] thresholds;
+    // A score can only be settled before every rule was seen if no rule can take weight away again
+    private final boolean[] hasNegativeWeights = new boolean[2];
+
+    private DetectionRules(int cloneThreshold, int knockoutThreshold) {
+        this.thresholds = new int[] {cloneThreshold, knockoutThreshold};
+    }
+
+    /**
+     * @return The rules currently in effect; the defaults until the config is loaded
+     */
+    public static DetectionRules current() {
+        return current;
+    }
+
+    /**
+     * Replaces the rules in effect.
+     *
+     * @param rules The new rules
+     */
+    public static void setCurrent(DetectionRules rules) {
+        current = rules;
+    }
+
+    /**
+     * @param rule A config list element
+     * @return true if it is a well-formed rule string
+     */
+    public static boolean isValidRule(Object rule) {
+        return rule instanceof String s && RULE.matcher(s.trim()).matches();
+    }
+
+    /**
+     * Compiles rule strings. Malformed entries are skipped.
+     *
+     * @param cloneRules Rules identifying a revival clone
+     * @param cloneThreshold Score at which an entity counts as a clone
+     * @param knockoutRules Rules identifying a knocked out player
+     * @param knockoutThreshold Score at which a player counts as knocked out
+     * @return The compiled rules
+     */
+    public static DetectionRules compile(List<? extends String> cloneRules, int cloneThreshold,
+                                         List<? extends String> knockoutRules, int knockoutThreshold) {
+        DetectionRules rules = new DetectionRules(cloneThreshold, knockoutThreshold);
+        rules.addAll(CLONE, cloneRules);
+        rules.addAll(KNOCKOUT, knockoutRules);
+        return rules;
+    }
+
+    /**
+     * Checks an entity against the clone rules. Type, persistent data and tag rules all add into one score.
+     *
+     * @param typeScore The entity type's score, from {@link #typeScore}
+     * @param keys The keys of the entity's persistent data
+     * @param isTrue Reads a persistent data key as a boolean, for {@code flag} rules
+     * @param tags The entity's scoreboard tags
+     * @return true if the clone score reaches the threshold
+     */
+    public boolean isClone(int typeScore, Set<String> keys, Predicate<String> isTrue, Set<String> tags) {
+        return matches(CLONE, typeScore, keys, isTrue, tags);
+    }
+
+    /**
+     * Checks a player's persistent data and tags against the knockout rules.
+     *
+     * @param keys The keys of the player's persistent data
+     * @param isTrue Reads a persistent data key as a boolean, for {@code flag} rules
+     * @param tags The player's scoreboard tags
+     * @return true if the knockout score reaches the threshold
+     */
+    public boolean isKnockedOut(Set<String> keys, Predicate<String> isTrue, Set<String> tags) {
+        return matches(KNOCKOUT, 0, keys, isTrue, tags);
+    }
+
+    /**
+     * Gets the part of the clone score an entity type contributes by its registry name.
+     * Depends on nothing but the name, so it can be computed once per type.
+     *
+     * @param typeId The entity type's registry name
+     * @return The summed weights of the matching {@code type} clone rules
+     */
+    public int typeScore(String typeId) {
+        if (typeId == null) return 0;
+
+        String id = typeId.toLowerCase(Locale.ROOT);
+        int score = 0;
+        for (int i = 0; i < typePatterns.size(); i++) {
+            if (id.contains(typePatterns.get(i))) {
+                score += typeWeights.get(i)[CLONE];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Checks whether an entity type points towards a revival entity by its registry name.
+     * Whether an entity of the type is a clone still depends on its full score, see {@link #isClone}.
+     *
+     * @param typeId The entity type's registry name
+     * @return true if the matching {@code type} clone rules add up to a positive weight
+     */
+    public boolean isRevivalType(String typeId) {
+        return typeScore(typeId) > 0;
+    }
+
+    /**
+     * Gets the {@link CloneFlags} bits of the revival markers present in persistent data,
+     * as declared by the clone {@code nbt} and {@code flag} rules.
+     *
+     * @param keys The keys of the persistent data
+     * @param isTrue Reads a persistent data key as a boolean, for {@code flag} rules
+     * @return Mask of revival key bits, 0 if no marker is present
+     */
+    public int revivalKeyMask(Set<String> keys, Predicate<String> isTrue) {
+        int mask = 0;
+        for (String key : keys) {
+            KeyRule rule = keyRules.get(key);
+            if (rule == null) continue;
+
+            mask |= rule.flagBits;
+            if (rule.flagBitsWhenTrue != 0 && isTrue.test(key)) {
+                mask |= rule.flagBitsWhenTrue;
+            }
+        }
+        return mask;
+    }
+
+    private boolean matches(int target, int score, Set<String> keys, Predicate<String> isTrue, Set<String> tags) {
+        int threshold = thresholds[target];
+        boolean canStopEarly = !hasNegativeWeights[target];
+        if (canStopEarly && score >= threshold && score > 0) return true;
+
+        for (String key : keys) {
+            KeyRule rule = keyRules.get(key);
+            if (rule == null) continue;
+
+            score += rule.present[target];
+            if (rule.whenTrue[target] != 0 && isTrue.test(key)) {
+                score += rule.whenTrue[target];
+            }
+        }
+        if (canStopEarly && score >= threshold && score > 0) return true;
+
+        for (String tag : tags) {
+            int[] weights = tagRules.get(tag);
+            if (weights != null) {
+                score += weights[target];
+            }
+        }
+        return score >= threshold && score > 0;
+    }
+
+    private void addAll(int target, List<? extends String> rules) {
+        for (String rule : rules) {
+            Matcher matcher = RULE.matcher(rule.trim());
+            if (!matcher.matches()) continue;
+
+            String name = matcher.group(2);
+            int weight = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 1;
+            if (weight < 0) {
+                hasNegativeWeights[target] = true;
+            }
+
+            // Negative weights are evidence against a clone, never a scan marker
+            int markerBits = target == CLONE && weight >= 0 ? CloneFlags.revivalKeyBit(name) : 0;
+
+            switch (matcher.group(1)) {
+                case "nbt" -> {
+                    KeyRule keyRule = keyRule(name);
+                    keyRule.present[target] += weight;
+                    keyRule.flagBits |= markerBits;
+                }
+                case "flag" -> {
+                    KeyRule keyRule = keyRule(name);
+                    keyRule.whenTrue[target] += weight;
+                    keyRule.flagBitsWhenTrue |= markerBits;
+                }
+                case "tag" -> tagRules.computeIfAbsent(name, key -> new int[2])[target] += weight;
+                case "type" -> {
+                    String pattern = name.toLowerCase(Locale.ROOT);
+                    int index = typePatterns.indexOf(pattern);
+                    if (index < 0) {
+                        typePatterns.add(pattern);
+                        typeWeights.add(new int[2]);
+                        index = typePatterns.size() - 1;
+                    }
+                    typeWeights.get(index)[target] += weight;
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private KeyRule keyRule(String key) {
+        return keyRules.computeIfAbsent(key, k -> new KeyRule());
+    }
+}
@@ -0,0 +1,101 @@
+package uk.creatopia.death_detangler.util;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.EntityType;
+import net.minecraftforge.registries.ForgeRegistries;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Per-{@link EntityType} classification, computed once after registries freeze.
+ * Lets the entity join hook skip ordinary entities with a single identity lookup
+ * instead of resolving and lowercasing the registry name for every entity.
+ */
+public class EntityTypeClassifier {
+
+    /**
+     * What an entity type can be, as far as clone detection is concerned.
+     */
+    public enum Kind {
+        /** Neither a player nor a revival entity; can never be a clone. */
+        OTHER,
+        /** The player entity type; clone status depends on persistent data. */
+        PLAYER,
+        /** Registry name matches {@code type} clone rules of {@link DetectionRules} with a positive total weight. */
+        REVIVAL
+    }
+
+    // A type's kind together with the clone score its registry name earns
+    private record Classification(Kind kind, int typeScore) { }
+
+    private static final Classification PLAYER = new Classification(Kind.PLAYER, 0);
+
+    private static volatile Map<EntityType<?>, Classification> cache = new IdentityHashMap<>();
+
+    /**
+     * Classifies every registered entity type. Call once registries are frozen, and again when the detection rules change.
+     */
+    public static void bake() {
+        Map<EntityType<?>, Classification> baked = new IdentityHashMap<>();
+        for (EntityType<?> type : ForgeRegistries.ENTITY_TYPES) {
+            baked.put(type, compute(type));
+        }
+        cache = baked;
+    }
+
+    /**
+     * Gets the classification of an entity type.
+     * Types registered after {@link #bake()} are classified on first sight and cached from then on.
+     *
+     * @param type The entity type
+     * @return The type's kind
+     */
+    public static Kind classify(EntityType<?> type) {
+        return lookup(type).kind();
+    }
+
+    /**
+     * Gets the part of the clone score an entity type earns by its registry name,
+     * to be added to the score of an entity's persistent data and tags.
+     *
+     * @param type The entity type
+     * @return The summed weights of the matching {@code type} clone rules
+     */
+    public static int typeScore(EntityType<?> type) {
+        return lookup(type).typeScore();
+    }
+
+    /**
+     * Classifies an entity type from its registry name alone.
+     *
+     * @param key The registry name, or null if unregistered
+     * @return {@link Kind#REVIVAL} if the name looks like a revival entity, otherwise {@link Kind#OTHER}
+     */
+    public static Kind classifyKey(ResourceLocation key) {
+        if (key == null) return Kind.OTHER;
+
+        return CloneFlags.isRevivalTypeId(key.toString()) ? Kind.REVIVAL : Kind.OTHER;
+    }
+
+    private static Classification lookup(EntityType<?> type) {
+        Map<EntityType<?>, Classification> current = cache;
+        Classification classification = current.get(type);
+        if (classification != null) return classification;
+
+        // Misses are rare, so copy on write keeps lookups lock-free
+        classification = compute(type);
+        Map<EntityType<?>, Classification> updated = new IdentityHashMap<>(current);
+        updated.put(type, classification);
+        cache = updated;
+        return classification;
+    }
+
+    private static Classification compute(EntityType<?> type) {
+        if (type == EntityType.PLAYER) return PLAYER;
+
+        ResourceLocation key = ForgeRegistries.ENTITY_TYPES.getKey(type);
+        int score = key != null ? DetectionRules.current().typeScore(key.toString()) : 0;
+        return new Classification(score > 0 ? Kind.REVIVAL : Kind.OTHER, score);
+    }
+}
@@ -0,0 +1,185 @@
+package uk.creatopia.death_detangler.util;
+
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraftforge.common.util.LazyOptional;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Per-player cache of where a totem of undying sits, so a knockout finds (and consumes)
+ * a totem with one lookup instead of walking the inventory.
+ * <p>
+ * Each entry remembers the main inventory or offhand slot last seen holding a totem. A remembered hit is
+ * re-validated before use, since stacks can shrink or move without the inventory being marked changed.
+ * A miss is remembered until the inventory changes: {@link Inventory#getTimesChanged()} covers slot clicks, and the
+ * state id of the player's open menu covers pickups, {@code /give} and direct slot writes, which the server only
+ * notices when it syncs the changed slot at the end of the tick.
+ * Curios slots are searched whenever the player inventory has no totem, through the Curios API resolved once by
+ * reflection; Curios keeps no change counter of its own, so a miss there can't be remembered.
+ * <p>
+ * Server thread only.
+ */
+public class TotemSlotIndex {
+
+    private static final int NO_SLOT = -1;
+
+    private static final class Entry {
+        Inventory inventory;
+        int slot = NO_SLOT;
+
+        // The change counters when the inventory was last searched in vain, missMenu null if it wasn't
+        AbstractContainerMenu missMenu;
+        int missStateId;
+        int missTimesChanged;
+
+        boolean isKnownMiss(ServerPlayer player) {
+            AbstractContainerMenu menu = player.containerMenu;
+            return missMenu == menu && missStateId == menu.getStateId()
+                    && missTimesChanged == inventory.getTimesChanged();
+        }
+
+        void rememberMiss(ServerPlayer player) {
+            missMenu = player.containerMenu;
+            missStateId = missMenu.getStateId();
+            missTimesChanged = inventory.getTimesChanged();
+        }
+    }
+
+    private static final Map<UUID, Entry> entries = new HashMap<>();
+
+    // Curios API, if installed: CuriosApi.getCuriosInventory(LivingEntity) -> ICuriosItemHandler.findFirstCurio(Item) -> SlotResult.stack()
+    private static final MethodHandle CURIOS_INVENTORY;
+    private static final MethodHandle CURIOS_FIND_FIRST;
+    private static final MethodHandle CURIOS_SLOT_STACK;
+
+    static {
+        MethodHandle inventory = null;
+        MethodHandle findFirst = null;
+        MethodHandle slotStack = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> api = Class.forName("top.theillusivec4.curios.api.CuriosApi");
+            Class<?> handler = Class.forName("top.theillusivec4.curios.api.type.capability.ICuriosItemHandler");
+            Class<?> slotResult = Class.forName("top.theillusivec4.curios.api.SlotResult");
+
+            inventory = lookup.unreflect(api.getMethod("getCuriosInventory", LivingEntity.class))
+                    .asType(MethodType.methodType(Object.class, LivingEntity.class));
+            findFirst = lookup.unreflect(handler.getMethod("findFirstCurio", Item.class))
+                    .asType(MethodType.methodType(Optional.class, Object.class, Item.class));
+            slotStack = lookup.unreflect(slotResult.getMethod("stack"))
+                    .asType(MethodType.methodType(ItemStack.class, Object.class));
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            // Curios is not installed, or its API differs; only the player inventory is searched
+            inventory = null;
+            findFirst = null;
+            slotStack = null;
+        }
+        CURIOS_INVENTORY = inventory;
+        CURIOS_FIND_FIRST = findFirst;
+        CURIOS_SLOT_STACK = slotStack;
+    }
+
+    /**
+     * Finds a totem of undying carried by a player, in the main inventory, the offhand or a Curios slot.
+     *
+     * @param player The player
+     * @return The live totem stack, to be shrunk when used, or {@link ItemStack#EMPTY} if the player has none
+     */
+    public static ItemStack findTotem(ServerPlayer player) {
+        if (player == null) return ItemStack.EMPTY;
+
+        Inventory inventory = player.getInventory();
+        Entry entry = entries.computeIfAbsent(player.getUUID(), uuid -> new Entry());
+
+        // A fresh inventory (e.g. after respawn) knows nothing yet
+        if (entry.inventory != inventory) {
+            entry.inventory = inventory;
+            entry.slot = NO_SLOT;
+            entry.missMenu = null;
+        }
+
+        // A remembered totem that was used up or moved means a new search, as does a changed inventory after a miss
+        if (entry.slot != NO_SLOT && !inventory.getItem(entry.slot).is(Items.TOTEM_OF_UNDYING)) {
+            entry.slot = NO_SLOT;
+            entry.missMenu = null;
+        }
+        if (entry.slot == NO_SLOT && !entry.isKnownMiss(player)) {
+            entry.slot = scan(inventory);
+            if (entry.slot == NO_SLOT) {
+                entry.rememberMiss(player);
+            }
+        }
+
+        if (entry.slot != NO_SLOT) {
+            return inventory.getItem(entry.slot);
+        }
+        return findCurio(player);
+    }
+
+    /**
+     * Drops the cached entry for a player, e.g. when they log out.
+     *
+     * @param playerUUID The player's UUID
+     */
+    public static void forget(UUID playerUUID) {
+        entries.remove(playerUUID);
+    }
+
+    /**
+     * Drops all cached entries, e.g. when the server stops.
+     */
+    public static void clear() {
+        entries.clear();
+    }
+
+    private static int scan(Inventory inventory) {
+        for (int i = 0; i < inventory.items.size(); i++) {
+            if (inventory.items.get(i).is(Items.TOTEM_OF_UNDYING)) {
+                return i;
+            }
+        }
+
+        // Offhand slots follow the main inventory and armor in container slot order
+        int offhandStart = inventory.items.size() + inventory.armor.size();
+        for (int i = 0; i < inventory.offhand.size(); i++) {
+            if (inventory.offhand.get(i).is(Items.TOTEM_OF_UNDYING)) {
+                return offhandStart + i;
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private static ItemStack findCurio(ServerPlayer player) {
+        if (CURIOS_INVENTORY == null) return ItemStack.EMPTY;
+
+        try {
+            Object lazyHandler = CURIOS_INVENTORY.invokeExact((LivingEntity) player);
+            if (!(lazyHandler instanceof LazyOptional<?> optional)) {
+                return ItemStack.EMPTY;
+            }
+
+            Object handler = optional.orElse(null);
+            if (handler == null) return ItemStack.EMPTY;
+
+            Optional<?> slot = (Optional<?>) CURIOS_FIND_FIRST.invokeExact(handler, Items.TOTEM_OF_UNDYING);
+            if (slot.isEmpty()) return ItemStack.EMPTY;
+
+            ItemStack stack = (ItemStack) CURIOS_SLOT_STACK.invokeExact((Object) slot.get());
+            return stack.is(Items.TOTEM_OF_UNDYING) ? stack : ItemStack.EMPTY;
+        } catch (Throwable t) {
+            return ItemStack.EMPTY;
+        }
+    }
+}
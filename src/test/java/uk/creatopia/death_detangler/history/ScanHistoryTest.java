@@ -0,0 +1,159 @@
+package uk.creatopia.death_detangler.history;
+
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.creatopia.death_detangler.Config;
+import uk.creatopia.death_detangler.report.ReportExecutor;
+import uk.creatopia.death_detangler.scan.ScanDelta;
+import uk.creatopia.death_detangler.scan.ScanResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanHistoryTest {
+
+    private static final ResourceKey<Level> OVERWORLD = dimension("overworld");
+    private static final ResourceKey<Level> NETHER = dimension("the_nether");
+
+    @TempDir
+    Path dir;
+
+    // Config is static; put back whatever the other tests expect
+    private int segmentMaxKb;
+    private int segmentMaxHours;
+    private int retentionDays;
+
+    @BeforeEach
+    void setUp() {
+        segmentMaxKb = Config.historySegmentMaxKb;
+        segmentMaxHours = Config.historySegmentMaxHours;
+        retentionDays = Config.historyRetentionDays;
+
+        Config.historySegmentMaxKb = 1024;
+        Config.historySegmentMaxHours = 24;
+        Config.historyRetentionDays = 30;
+    }
+
+    @AfterEach
+    void tearDown() {
+        ScanHistory.close();
+        ReportExecutor.shutdown();
+
+        Config.historySegmentMaxKb = segmentMaxKb;
+        Config.historySegmentMaxHours = segmentMaxHours;
+        Config.historyRetentionDays = retentionDays;
+    }
+
+    @Test
+    void summarisesAppendedScans() throws Exception {
+        ScanHistory.open(dir);
+        ScanHistory.append(result(Map.of(OVERWORLD, 3, NETHER, 1), null), false, "periodic");
+        ScanHistory.append(result(Map.of(OVERWORLD, 2), delta(2, 1)), true, "command");
+
+        ScanHistory.Summary summary = ScanHistory.query(0, null).get();
+
+        assertEquals(2, summary.getScans());
+        assertEquals(6, summary.getTotalFound());
+        assertEquals(4, summary.getMaxFound());
+        assertEquals(2, summary.getTotalAdded());
+        assertEquals(1, summary.getTotalResolved());
+        assertEquals(Map.of("minecraft:overworld", 5L, "minecraft:the_nether", 1L), summary.getPerDimension());
+    }
+
+    @Test
+    void filtersByDimensionAndTime() throws Exception {
+        ScanHistory.open(dir);
+        ScanHistory.append(result(Map.of(OVERWORLD, 3, NETHER, 1), null), false, "periodic");
+        ScanHistory.append(result(Map.of(OVERWORLD, 2), null), false, "periodic");
+
+        ScanHistory.Summary nether = ScanHistory.query(0, "minecraft:the_nether").get();
+        assertEquals(1, nether.getScans());
+        assertEquals(1, nether.getTotalFound());
+        assertEquals(Map.of("minecraft:the_nether", 1L), nether.getPerDimension());
+
+        long future = System.currentTimeMillis() / 1000 + 3600;
+        assertEquals(0, ScanHistory.query(future, null).get().getScans());
+    }
+
+    @Test
+    void sealedSegmentsAreFoundAgainAfterReopening() throws Exception {
+        // A zero size limit seals the segment before every append
+        Config.historySegmentMaxKb = 0;
+        ScanHistory.open(dir);
+        for (int i = 1; i <= 3; i++) {
+            ScanHistory.append(result(Map.of(OVERWORLD, i), null), false, "periodic");
+            // Segments are named by creation time; keep them apart
+            ScanHistory.query(0, null).get();
+            Thread.sleep(5);
+        }
+        ScanHistory.close();
+        ReportExecutor.shutdown();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(3, files.filter(file -> file.getFileName().toString().startsWith("history-")).count());
+        }
+
+        ScanHistory.open(dir);
+        ScanHistory.Summary summary = ScanHistory.query(0, null).get();
+        assertEquals(3, summary.getScans());
+        assertEquals(6, summary.getTotalFound());
+    }
+
+    @Test
+    void tornLinesAndUnindexedSegmentsAreRecovered() throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        Files.writeString(dir.resolve("history-1.ndjson"),
+                "{\"t\":" + now + ",\"source\":\"periodic\",\"removed\":false,\"total\":4,\"dims\":{\"minecraft:overworld\":4}}\n"
+                        + "{\"t\":" + now + ",\"tot", StandardOpenOption.CREATE);
+
+        ScanHistory.open(dir);
+        ScanHistory.Summary summary = ScanHistory.query(0, null).get();
+
+        assertEquals(1, summary.getScans());
+        assertEquals(4, summary.getTotalFound());
+        assertTrue(Files.readString(dir.resolve("index.ndjson")).contains("history-1.ndjson"));
+    }
+
+    @Test
+    void segmentsPastRetentionAreDeleted() throws Exception {
+        long old = System.currentTimeMillis() / 1000 - 40 * 86400L;
+        Path segment = dir.resolve("history-2.ndjson");
+        Files.writeString(segment, "{\"t\":" + old + ",\"total\":1,\"dims\":{}}\n");
+
+        ScanHistory.open(dir);
+        assertEquals(0, ScanHistory.query(0, null).get().getScans());
+        assertFalse(Files.exists(segment));
+    }
+
+    @Test
+    void queryingAClosedHistoryFails() {
+        assertTrue(ScanHistory.query(0, null).isCompletedExceptionally());
+    }
+
+    private static ResourceKey<Level> dimension(String path) {
+        return ResourceKey.create(Registries.DIMENSION, new ResourceLocation("minecraft", path));
+    }
+
+    private static ScanResult result(Map<ResourceKey<Level>, Integer> perDimension, ScanDelta delta) {
+        int total = perDimension.values().stream().mapToInt(Integer::intValue).sum();
+        return new ScanResult(total, perDimension, List.of(), 0, delta);
+    }
+
+    private static ScanDelta delta(int added, int resolved) {
+        ScanResult.EntityInfo info = new ScanResult.EntityInfo("uuid", "minecraft:overworld", 0, 0);
+        return new ScanDelta(Collections.nCopies(added, info), Collections.nCopies(resolved, info), 0, 0, false);
+    }
+}
@@ -0,0 +1,98 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneExpiryQueueTest {
+
+    @Test
+    void expiriesAreHandedOutInDeadlineOrderOnceDue() {
+        CloneExpiryQueue queue = new CloneExpiryQueue();
+        UUID late = UUID.randomUUID();
+        UUID early = UUID.randomUUID();
+        queue.schedule(late, 200);
+        queue.schedule(early, 100);
+
+        List<UUID> expired = new ArrayList<>();
+        queue.pollDue(99, expired::add);
+        assertTrue(expired.isEmpty());
+        assertFalse(queue.hasDue(99));
+
+        queue.pollDue(200, expired::add);
+        assertEquals(List.of(early, late), expired);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void anEarlierDeadlineIsKept() {
+        CloneExpiryQueue queue = new CloneExpiryQueue();
+        UUID owner = UUID.randomUUID();
+        queue.schedule(owner, 100);
+        queue.schedule(owner, 300);
+
+        List<UUID> expired = new ArrayList<>();
+        queue.pollDue(100, expired::add);
+        assertEquals(List.of(owner), expired);
+    }
+
+    @Test
+    void reschedulingEarlierExpiresOnlyOnce() {
+        CloneExpiryQueue queue = new CloneExpiryQueue();
+        UUID owner = UUID.randomUUID();
+        queue.schedule(owner, 300);
+        queue.schedule(owner, 100);
+        assertEquals(1, queue.size());
+
+        List<UUID> expired = new ArrayList<>();
+        queue.pollDue(1000, expired::add);
+        assertEquals(List.of(owner), expired);
+    }
+
+    @Test
+    void cancelledExpiriesAreSkipped() {
+        CloneExpiryQueue queue = new CloneExpiryQueue();
+        UUID cancelled = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+        queue.schedule(cancelled, 100);
+        queue.schedule(kept, 150);
+
+        queue.cancel(cancelled);
+        assertFalse(queue.isScheduled(cancelled));
+        assertTrue(queue.isScheduled(kept));
+
+        List<UUID> expired = new ArrayList<>();
+        queue.pollDue(200, expired::add);
+        assertEquals(List.of(kept), expired);
+    }
+
+    @Test
+    void anOwnerCanBeScheduledAgainAfterCancelling() {
+        CloneExpiryQueue queue = new CloneExpiryQueue();
+        UUID owner = UUID.randomUUID();
+        queue.schedule(owner, 100);
+        queue.cancel(owner);
+        queue.schedule(owner, 500);
+
+        List<UUID> expired = new ArrayList<>();
+        queue.pollDue(100, expired::add);
+        assertTrue(expired.isEmpty());
+
+        queue.pollDue(500, expired::add);
+        assertEquals(List.of(owner), expired);
+    }
+
+    @Test
+    void clearDropsEverything() {
+        CloneExpiryQueue queue = new CloneExpiryQueue();
+        queue.schedule(UUID.randomUUID(), 10);
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertFalse(queue.hasDue(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,162 @@
+package uk.creatopia.death_detangler.lifecycle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bookkeeping of {@link CloneTracker}. Dimensions are only stored, never resolved, unless clones
+ * are looked up in a server's levels, so these tests pass none.
+ */
+class CloneTrackerTest {
+
+    @Test
+    void trackingACloneMarksTheOwnerInRevival() {
+        CloneTracker tracker = new CloneTracker();
+        UUID owner = UUID.randomUUID();
+
+        tracker.trackClone(owner, UUID.randomUUID(), null);
+
+        assertTrue(tracker.hasClone(owner));
+        assertTrue(tracker.isInRevival(owner));
+        assertEquals(1, tracker.size());
+        assertEquals(1, tracker.cloneCount());
+    }
+
+    @Test
+    void trackingTheSameCloneTwiceCountsItOnce() {
+        CloneTracker tracker = new CloneTracker();
+        UUID owner = UUID.randomUUID();
+        UUID clone = UUID.randomUUID();
+
+        tracker.trackClone(owner, clone, null);
+        tracker.trackClone(owner, clone, null);
+
+        assertEquals(1, tracker.cloneCount());
+    }
+
+    @Test
+    void untrackingTheLastCloneForgetsTheOwner() {
+        CloneTracker tracker = new CloneTracker();
+        UUID owner = UUID.randomUUID();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        tracker.trackClone(owner, first, null);
+        tracker.trackClone(owner, second, null);
+
+        assertTrue(tracker.untrackClone(owner, first));
+        assertTrue(tracker.hasClone(owner));
+        assertTrue(tracker.isInRevival(owner));
+
+        assertTrue(tracker.untrackClone(owner, second));
+        assertFalse(tracker.hasClone(owner));
+        assertFalse(tracker.isInRevival(owner));
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.cloneCount());
+    }
+
+    @Test
+    void untrackingAnUnknownCloneChangesNothing() {
+        CloneTracker tracker = new CloneTracker();
+        UUID owner = UUID.randomUUID();
+        tracker.trackClone(owner, UUID.randomUUID(), null);
+
+        assertFalse(tracker.untrackClone(owner, UUID.randomUUID()));
+        assertFalse(tracker.untrackClone(UUID.randomUUID(), UUID.randomUUID()));
+        assertEquals(1, tracker.cloneCount());
+    }
+
+    @Test
+    void leavingRevivalKeepsClonesButForgetsOwnersWithout() {
+        CloneTracker tracker = new CloneTracker();
+        UUID withClone = UUID.randomUUID();
+        UUID withoutClone = UUID.randomUUID();
+        tracker.trackClone(withClone, UUID.randomUUID(), null);
+        tracker.setInRevival(withoutClone, true);
+        assertEquals(2, tracker.size());
+
+        tracker.setInRevival(withClone, false);
+        tracker.setInRevival(withoutClone, false);
+
+        assertTrue(tracker.hasClone(withClone));
+        assertFalse(tracker.isInRevival(withClone));
+        assertFalse(tracker.isInRevival(withoutClone));
+        assertEquals(1, tracker.size());
+    }
+
+    @Test
+    void removeDropsAllOfAnOwnersClones() {
+        CloneTracker tracker = new CloneTracker();
+        UUID owner = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        for (int i = 0; i < 5; i++) {
+            tracker.trackClone(owner, UUID.randomUUID(), null);
+        }
+        tracker.trackClone(other, UUID.randomUUID(), null);
+
+        tracker.remove(owner);
+
+        assertFalse(tracker.hasClone(owner));
+        assertTrue(tracker.hasClone(other));
+        assertEquals(1, tracker.cloneCount());
+    }
+
+    @Test
+    void ownersSurviveGrowthAndRemovalOfTheirNeighbours() {
+        CloneTracker tracker = new CloneTracker();
+        List<UUID> owners = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            UUID owner = UUID.randomUUID();
+            owners.add(owner);
+            tracker.trackClone(owner, UUID.randomUUID(), null);
+        }
+
+        // Removing every other owner shifts probe runs back; the rest must stay reachable
+        for (int i = 0; i < owners.size(); i += 2) {
+            tracker.remove(owners.get(i));
+        }
+
+        for (int i = 0; i < owners.size(); i++) {
+            assertEquals(i % 2 == 1, tracker.hasClone(owners.get(i)), "owner " + i);
+        }
+        assertEquals(500, tracker.size());
+        assertEquals(500, tracker.cloneCount());
+    }
+
+    @Test
+    void freedClonesAreReusedWithoutLosingOthers() {
+        CloneTracker tracker = new CloneTracker();
+        UUID owner = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+        tracker.trackClone(owner, kept, null);
+
+        for (int i = 0; i < 100; i++) {
+            UUID clone = UUID.randomUUID();
+            tracker.trackClone(owner, clone, null);
+            assertTrue(tracker.untrackClone(owner, clone));
+        }
+
+        assertEquals(1, tracker.cloneCount());
+        assertTrue(tracker.untrackClone(owner, kept));
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        CloneTracker tracker = new CloneTracker();
+        for (int i = 0; i < 50; i++) {
+            tracker.trackClone(UUID.randomUUID(), UUID.randomUUID(), null);
+        }
+
+        tracker.clear();
+
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.cloneCount());
+        UUID owner = UUID.randomUUID();
+        tracker.trackClone(owner, UUID.randomUUID(), null);
+        assertTrue(tracker.hasClone(owner));
+    }
+}
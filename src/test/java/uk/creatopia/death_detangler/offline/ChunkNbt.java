@@ -0,0 +1,115 @@
+package uk.creatopia.death_detangler.offline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+
+/**
+ * Writes entity chunk NBT the way the game stores it, for the offline parser tests.
+ */
+final class ChunkNbt {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * Starts a chunk whose {@code Entities} list declares the given number of compounds.
+     */
+    static ChunkNbt chunk(int entityCount) {
+        ChunkNbt nbt = new ChunkNbt();
+        nbt.write(() -> {
+            nbt.out.writeByte(10);
+            nbt.out.writeUTF("");
+            nbt.out.writeByte(11);
+            nbt.out.writeUTF("Position");
+            nbt.out.writeInt(2);
+            nbt.out.writeInt(3);
+            nbt.out.writeInt(-4);
+            nbt.out.writeByte(9);
+            nbt.out.writeUTF("Entities");
+            nbt.out.writeByte(10);
+            nbt.out.writeInt(entityCount);
+        });
+        return nbt;
+    }
+
+    /**
+     * Appends an entity compound.
+     *
+     * @param id The entity type id
+     * @param uuid The entity UUID
+     * @param tags Scoreboard tags
+     * @param forgeData ForgeData entries as key / byte value pairs
+     */
+    ChunkNbt entity(String id, UUID uuid, String[] tags, Object... forgeData) {
+        write(() -> {
+            out.writeByte(8);
+            out.writeUTF("id");
+            out.writeUTF(id);
+
+            out.writeByte(11);
+            out.writeUTF("UUID");
+            out.writeInt(4);
+            out.writeInt((int) (uuid.getMostSignificantBits() >> 32));
+            out.writeInt((int) uuid.getMostSignificantBits());
+            out.writeInt((int) (uuid.getLeastSignificantBits() >> 32));
+            out.writeInt((int) uuid.getLeastSignificantBits());
+
+            // Something the parser has to skip over
+            out.writeByte(9);
+            out.writeUTF("Pos");
+            out.writeByte(6);
+            out.writeInt(3);
+            out.writeDouble(1.5);
+            out.writeDouble(64);
+            out.writeDouble(-2.5);
+
+            out.writeByte(9);
+            out.writeUTF("Tags");
+            out.writeByte(8);
+            out.writeInt(tags.length);
+            for (String tag : tags) {
+                out.writeUTF(tag);
+            }
+
+            out.writeByte(10);
+            out.writeUTF("ForgeData");
+            for (int i = 0; i < forgeData.length; i += 2) {
+                out.writeByte(1);
+                out.writeUTF((String) forgeData[i]);
+                out.writeByte((Integer) forgeData[i + 1]);
+            }
+            out.writeByte(0);
+
+            out.writeByte(0);
+        });
+        return this;
+    }
+
+    /**
+     * Closes the root compound.
+     */
+    byte[] end() {
+        write(() -> {
+            out.writeByte(8);
+            out.writeUTF("After");
+            out.writeUTF("kept");
+            out.writeByte(0);
+        });
+        return bytes.toByteArray();
+    }
+
+    private interface Write {
+        void run() throws IOException;
+    }
+
+    private void write(Write write) {
+        try {
+            write.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
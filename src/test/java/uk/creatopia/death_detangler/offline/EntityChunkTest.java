@@ -0,0 +1,85 @@
+package uk.creatopia.death_detangler.offline;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityChunkTest {
+
+    private static final String[] NO_TAGS = {};
+
+    @Test
+    void readsTheFieldsTheCloneRulesNeed() throws IOException {
+        UUID uuid = UUID.randomUUID();
+        byte[] data = ChunkNbt.chunk(1)
+                .entity("hardcorerevival:body", uuid, new String[] {"downed"}, "IsRevivalClone", 1, "corpse", 0)
+                .end();
+
+        List<EntityChunk.Entity> entities = EntityChunk.parse(data).getEntities();
+
+        assertEquals(1, entities.size());
+        EntityChunk.Entity entity = entities.get(0);
+        assertEquals("hardcorerevival:body", entity.id);
+        assertEquals(uuid, entity.uuid);
+        assertEquals(Set.of("downed"), entity.tags);
+        assertEquals(Set.of("IsRevivalClone", "corpse"), entity.forgeDataKeys);
+        assertEquals(Set.of("IsRevivalClone"), entity.forgeDataTrue);
+    }
+
+    @Test
+    void withoutCutsEntitiesAndKeepsTheRest() throws IOException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        byte[] data = ChunkNbt.chunk(3)
+                .entity("minecraft:zombie", first, NO_TAGS)
+                .entity("hardcorerevival:body", second, NO_TAGS, "HardcoreRevival", 1)
+                .entity("minecraft:cow", third, NO_TAGS)
+                .end();
+        EntityChunk chunk = EntityChunk.parse(data);
+
+        BitSet removed = new BitSet();
+        removed.set(1);
+        byte[] rewritten = chunk.without(removed);
+
+        List<EntityChunk.Entity> entities = EntityChunk.parse(rewritten).getEntities();
+        assertEquals(List.of(first, third), entities.stream().map(entity -> entity.uuid).toList());
+        // Data around the list is copied unchanged
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 12, data.length),
+                Arrays.copyOfRange(rewritten, rewritten.length - 12, rewritten.length));
+    }
+
+    @Test
+    void aChunkWithoutEntitiesParses() throws IOException {
+        assertTrue(EntityChunk.parse(ChunkNbt.chunk(0).end()).getEntities().isEmpty());
+    }
+
+    @Test
+    void negativeOrOversizedListCountsAreMalformed() {
+        assertThrows(IOException.class, () -> EntityChunk.parse(ChunkNbt.chunk(-1).end()));
+        assertThrows(IOException.class, () -> EntityChunk.parse(ChunkNbt.chunk(Integer.MAX_VALUE).end()));
+        assertThrows(IOException.class, () -> EntityChunk.parse(ChunkNbt.chunk(1000).end()));
+    }
+
+    @Test
+    void truncatedDataIsMalformed() {
+        byte[] data = ChunkNbt.chunk(1).entity("minecraft:zombie", UUID.randomUUID(), NO_TAGS).end();
+
+        for (int length : new int[] {0, 1, 20, data.length / 2, data.length - 1}) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () -> EntityChunk.parse(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void aRootThatIsNotACompoundIsRejected() {
+        assertThrows(IOException.class, () -> EntityChunk.parse(new byte[] {8, 0, 0, 0, 0}));
+    }
+}
@@ -0,0 +1,75 @@
+package uk.creatopia.death_detangler.offline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.creatopia.death_detangler.util.DetectionRules;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OfflineConfigTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsTheRulesAsForgeWritesThem() throws IOException {
+        Path file = write("""
+                #Whether to remove clones automatically.
+                autoRemove = false
+                cleanIntervalTicks = 6000
+                #Rules that identify a Hardcore Revival clone, as <kind>:<name>=<weight>.
+                cloneRules = ["nbt:custom_body=2", "tag:npc=-5", 'type:ghost']
+                #Score at which an entity counts as a Hardcore Revival clone.
+                #Range: > 1
+                cloneRuleThreshold = 2
+                knockoutRules = [
+                    "tag:sleeping_bag=1", # multi-line arrays are allowed
+                    "nbt:\\u0064owned=1",
+                ]
+                """);
+
+        DetectionRules rules = OfflineConfig.load(file);
+
+        assertTrue(rules.isClone(0, Set.of("custom_body"), key -> false, Set.of()));
+        assertFalse(rules.isClone(0, Set.of("custom_body"), key -> false, Set.of("npc")));
+        assertFalse(rules.isClone(rules.typeScore("mod:ghost"), Set.of(), key -> false, Set.of()));
+        // The defaults are replaced, not extended
+        assertFalse(rules.isClone(0, Set.of("HardcoreRevival"), key -> false, Set.of()));
+        assertTrue(rules.isKnockedOut(Set.of("downed"), key -> false, Set.of()));
+        assertTrue(rules.isKnockedOut(Set.of(), key -> false, Set.of("sleeping_bag")));
+    }
+
+    @Test
+    void missingSettingsKeepTheirDefaults() throws IOException {
+        DetectionRules rules = OfflineConfig.load(write("autoRemove = true\n"));
+
+        assertTrue(rules.isClone(0, Set.of("HardcoreRevival"), key -> false, Set.of()));
+        assertTrue(rules.isKnockedOut(Set.of(), key -> false, Set.of("knocked_out")));
+    }
+
+    @Test
+    void malformedFilesAreRejected() throws IOException {
+        assertThrows(IOException.class, () -> OfflineConfig.load(write("cloneRules = [\"nbt:a=1\"")));
+        assertThrows(IOException.class, () -> OfflineConfig.load(write("cloneRules = \"nbt:a=1\n")));
+        assertThrows(IOException.class, () -> OfflineConfig.load(write("cloneRules\n")));
+    }
+
+    @Test
+    void theConfigIsFoundNextToTheWorld() throws IOException {
+        Path world = Files.createDirectories(dir.resolve("world"));
+        assertNull(OfflineConfig.find(world));
+
+        Path file = Files.createDirectories(dir.resolve("config")).resolve(OfflineConfig.FILE_NAME);
+        Files.writeString(file, "");
+        assertEquals(file, OfflineConfig.find(world));
+    }
+
+    private Path write(String toml) throws IOException {
+        return Files.writeString(dir.resolve(OfflineConfig.FILE_NAME), toml);
+    }
+}
@@ -0,0 +1,186 @@
+package uk.creatopia.death_detangler.offline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionFileTest {
+
+    private static final int SECTOR = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsInlineChunksOfEitherCompression() throws IOException {
+        byte[] zlibChunk = ChunkNbt.chunk(0).end();
+        byte[] gzipChunk = ChunkNbt.chunk(1).entity("minecraft:cow", UUID.randomUUID(), new String[0]).end();
+        Path file = dir.resolve("r.-1.2.mca");
+        writeRegion(file, Map.of(33, payload(2, zlib(zlibChunk)), 1023, payload(1, gzip(gzipChunk))));
+
+        try (RegionFile region = RegionFile.open(file)) {
+            assertTrue(region.hasChunk(33));
+            assertTrue(region.hasChunk(1023));
+            assertFalse(region.hasChunk(0));
+            assertNull(region.readChunk(0));
+
+            assertArrayEquals(zlibChunk, region.readChunk(33));
+            assertArrayEquals(gzipChunk, region.readChunk(1023));
+            assertEquals(-31, region.chunkX(33));
+            assertEquals(65, region.chunkZ(33));
+        }
+    }
+
+    @Test
+    void readsExternalChunks() throws IOException {
+        byte[] chunk = ChunkNbt.chunk(0).end();
+        Path file = dir.resolve("r.0.0.mca");
+        writeRegion(file, Map.of(5, ByteBuffer.allocate(5).putInt(1).put((byte) (2 | 128)).array()));
+        Files.write(dir.resolve("c.5.0.mcc"), zlib(chunk));
+
+        try (RegionFile region = RegionFile.open(file)) {
+            assertArrayEquals(chunk, region.readChunk(5));
+        }
+    }
+
+    @Test
+    void rewriteReplacesChunksAndCopiesTheRest() throws IOException {
+        byte[] kept = ChunkNbt.chunk(0).end();
+        byte[] original = ChunkNbt.chunk(1).entity("hardcorerevival:body", UUID.randomUUID(), new String[0]).end();
+        byte[] replacement = ChunkNbt.chunk(0).end();
+        Path file = dir.resolve("r.0.0.mca");
+        writeRegion(file, Map.of(0, payload(2, zlib(kept)), 7, payload(2, zlib(original))));
+
+        try (RegionFile region = RegionFile.load(file)) {
+            region.rewrite(Map.of(7, replacement));
+        }
+
+        try (RegionFile region = RegionFile.open(file)) {
+            assertArrayEquals(kept, region.readChunk(0));
+            assertArrayEquals(replacement, region.readChunk(7));
+            assertFalse(region.hasChunk(1));
+        }
+        assertFalse(Files.exists(dir.resolve("r.0.0.mca.tmp")));
+    }
+
+    @Test
+    void rewriteCopiesCorruptChunksThroughUnchanged() throws IOException {
+        byte[] corrupt = ByteBuffer.allocate(SECTOR).putInt(1 << 20).put((byte) 2).put(new byte[] {9, 8, 7}).array();
+        Path file = dir.resolve("r.0.0.mca");
+        writeRegion(file, Map.of(
+                3, corrupt,
+                4, ByteBuffer.allocate(5).putInt(1 << 20).put((byte) 2).array(),
+                7, payload(2, zlib(ChunkNbt.chunk(0).end()))
+        ));
+        // A location past the end of the file
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(500 << 8 | 1).flip(), 5 * 4);
+        }
+
+        try (RegionFile region = RegionFile.load(file)) {
+            region.rewrite(Map.of(7, ChunkNbt.chunk(0).end()));
+        }
+
+        ByteBuffer rewritten = ByteBuffer.wrap(Files.readAllBytes(file));
+        int offset = (rewritten.getInt(3 * 4) >>> 8) * SECTOR;
+        assertArrayEquals(corrupt, Arrays.copyOfRange(rewritten.array(), offset, offset + SECTOR));
+        assertEquals(0, rewritten.getInt(5 * 4));
+        try (RegionFile region = RegionFile.open(file)) {
+            assertThrows(IOException.class, () -> region.readChunk(3));
+            assertThrows(IOException.class, () -> region.readChunk(4));
+            assertArrayEquals(ChunkNbt.chunk(0).end(), region.readChunk(7));
+        }
+    }
+
+    @Test
+    void onlyLoadedRegionsCanBeRewritten() throws IOException {
+        Path file = dir.resolve("r.0.0.mca");
+        writeRegion(file, Map.of(0, payload(2, zlib(ChunkNbt.chunk(0).end()))));
+
+        try (RegionFile region = RegionFile.open(file)) {
+            assertThrows(IllegalStateException.class, () -> region.rewrite(Map.of()));
+        }
+    }
+
+    @Test
+    void corruptChunksAreReportedAsIOExceptions() throws IOException {
+        Path file = dir.resolve("r.0.0.mca");
+        writeRegion(file, Map.of(
+                0, payload(2, new byte[] {1, 2, 3, 4}),
+                1, payload(9, zlib(ChunkNbt.chunk(0).end())),
+                2, ByteBuffer.allocate(5).putInt(1 << 20).put((byte) 2).array()
+        ));
+
+        try (RegionFile region = RegionFile.open(file)) {
+            assertThrows(IOException.class, () -> region.readChunk(0));
+            assertThrows(IOException.class, () -> region.readChunk(1));
+            assertThrows(IOException.class, () -> region.readChunk(2));
+        }
+    }
+
+    @Test
+    void onlyRegionFileNamesAreOpened() throws IOException {
+        Path file = dir.resolve("region.mca");
+        Files.write(file, new byte[2 * SECTOR]);
+
+        assertThrows(IOException.class, () -> RegionFile.open(file));
+    }
+
+    private static byte[] payload(int compression, byte[] compressed) {
+        return ByteBuffer.allocate(5 + compressed.length)
+                .putInt(1 + compressed.length).put((byte) compression).put(compressed).array();
+    }
+
+    private static void writeRegion(Path file, Map<Integer, byte[]> payloads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(2 * SECTOR);
+        int sector = 2;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        for (int i = 0; i < RegionFile.CHUNKS; i++) {
+            byte[] payload = payloads.get(i);
+            if (payload == null) continue;
+
+            int sectors = (payload.length + SECTOR - 1) / SECTOR;
+            header.putInt(i * 4, sector << 8 | sectors);
+            header.putInt(SECTOR + i * 4, 1_700_000_000 + i);
+            body.write(payload);
+            body.write(new byte[sectors * SECTOR - payload.length]);
+            sector += sectors;
+        }
+
+        out.write(header.array());
+        out.write(body.toByteArray());
+        Files.write(file, out.toByteArray());
+    }
+
+    private static byte[] zlib(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,52 @@
+package uk.creatopia.death_detangler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneFlagsTest {
+
+    @Test
+    void oneMarkerKeyOnAnOnlinePlayerIsNotAnOrphan() {
+        for (int key : new int[] {CloneFlags.HARDCORE_REVIVAL, CloneFlags.CORPSE, CloneFlags.REVIVAL_TAG}) {
+            int mask = CloneFlags.computeMask(false, false, key, 72_000);
+
+            assertEquals(key, mask);
+            assertFalse(CloneFlags.isOrphan(mask));
+        }
+    }
+
+    @Test
+    void theGenericMarkerOnlyCountsWithoutAKeyOfItsOwn() {
+        int mask = CloneFlags.computeMask(false, false, CloneFlags.HARDCORE_REVIVAL | CloneFlags.REVIVAL_TAG, 0);
+
+        assertEquals(CloneFlags.HARDCORE_REVIVAL, mask);
+    }
+
+    @Test
+    void aDisconnectedCloneWithAMarkerIsAnOrphan() {
+        int mask = CloneFlags.computeMask(true, true, CloneFlags.HARDCORE_REVIVAL, 400);
+
+        assertTrue(CloneFlags.isOrphan(mask));
+        assertEquals(List.of("no_connection", "not_in_player_list", "hardcore_revival", "high_tick_count"),
+                CloneFlags.decode(mask));
+    }
+
+    @Test
+    void aTaggedEntityWithoutAMarkerIsMarkedAsAClone() {
+        assertTrue(CloneFlags.isMarkedClone(key -> false, Set.of("revival_in_progress")));
+        assertTrue(CloneFlags.isMarkedClone("DeathDetanglerClone"::equals, Set.of()));
+        assertTrue(CloneFlags.isMarkedClone("IsRevivalClone"::equals, Set.of()));
+        assertFalse(CloneFlags.isMarkedClone(key -> false, Set.of("knocked_out")));
+        assertFalse(CloneFlags.isMarkedClone("HardcoreRevival"::equals, Set.of()));
+    }
+
+    @Test
+    void tickCountOnlyCountsWithoutAConnection() {
+        assertEquals(0, CloneFlags.computeMask(false, false, 0, 400));
+        assertEquals(CloneFlags.NO_CONNECTION | CloneFlags.HIGH_TICK_COUNT, CloneFlags.computeMask(true, false, 0, 400));
+    }
+}
@@ -0,0 +1,139 @@
+package uk.creatopia.death_detangler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DetectionRulesTest {
+
+    private static final Predicate<String> NONE_TRUE = key -> false;
+    private static final Predicate<String> ALL_TRUE = key -> true;
+
+    private static DetectionRules clone(int threshold, String... rules) {
+        return DetectionRules.compile(List.of(rules), threshold, List.of(), 1);
+    }
+
+    @Test
+    void defaultsRecogniseHardcoreRevivalClones() {
+        DetectionRules rules = DetectionRules.compile(DetectionRules.DEFAULT_CLONE_RULES, 1,
+                DetectionRules.DEFAULT_KNOCKOUT_RULES, 1);
+
+        assertTrue(rules.isClone(0, Set.of("HardcoreRevival"), NONE_TRUE, Set.of()));
+        assertFalse(rules.isClone(0, Set.of("PlayerPersisted", "curios"), NONE_TRUE, Set.of()));
+        // Corpse and grave keys are scan markers only
+        assertFalse(rules.isClone(0, Set.of("corpse", "grave"), NONE_TRUE, Set.of()));
+        assertTrue(rules.isRevivalType("hardcorerevival:body"));
+        assertFalse(rules.isRevivalType("minecraft:zombie"));
+    }
+
+    @Test
+    void flagRulesNeedATrueValue() {
+        DetectionRules rules = clone(1, "flag:IsRevivalClone=1");
+
+        assertFalse(rules.isClone(0, Set.of("IsRevivalClone"), NONE_TRUE, Set.of()));
+        assertTrue(rules.isClone(0, Set.of("IsRevivalClone"), ALL_TRUE, Set.of()));
+    }
+
+    @Test
+    void weightsFromEveryKindAddIntoOneScore() {
+        DetectionRules rules = clone(3, "type:reviv=1", "nbt:downed=1", "tag:revived=1");
+        int typeScore = rules.typeScore("hardcorerevival:revival_body");
+
+        assertEquals(1, typeScore);
+        assertFalse(rules.isClone(typeScore, Set.of("downed"), NONE_TRUE, Set.of()));
+        assertTrue(rules.isClone(typeScore, Set.of("downed"), NONE_TRUE, Set.of("revived")));
+    }
+
+    @Test
+    void aRevivalTypeWithOneKeyReachesAThresholdOfTwo() {
+        DetectionRules rules = clone(2, "type:reviv=1", "nbt:HardcoreRevival=1");
+        int typeScore = rules.typeScore("hardcorerevival:revival_body");
+
+        assertTrue(rules.isRevivalType("hardcorerevival:revival_body"));
+        assertFalse(rules.isClone(typeScore, Set.of(), NONE_TRUE, Set.of()));
+        assertTrue(rules.isClone(typeScore, Set.of("HardcoreRevival"), NONE_TRUE, Set.of()));
+    }
+
+    @Test
+    void negativeWeightsCountAgainstAClone() {
+        DetectionRules rules = clone(1, "nbt:HardcoreRevival=1", "tag:npc=-1");
+
+        assertTrue(rules.isClone(0, Set.of("HardcoreRevival"), NONE_TRUE, Set.of()));
+        assertFalse(rules.isClone(0, Set.of("HardcoreRevival"), NONE_TRUE, Set.of("npc")));
+    }
+
+    @Test
+    void aZeroScoreNeverMatches() {
+        DetectionRules rules = DetectionRules.compile(List.of("nbt:marker=0"), 0, List.of(), 1);
+
+        assertFalse(rules.isClone(0, Set.of("marker"), NONE_TRUE, Set.of()));
+    }
+
+    @Test
+    void typeRulesIgnoreCase() {
+        DetectionRules rules = clone(1, "type:HardcoreRevival");
+
+        assertEquals(1, rules.typeScore("HARDCOREREVIVAL:Body"));
+        assertEquals(0, rules.typeScore(null));
+    }
+
+    @Test
+    void knockoutRulesAreKeptApartFromCloneRules() {
+        DetectionRules rules = DetectionRules.compile(List.of("nbt:clone=1"), 1, List.of("tag:knocked_out=1"), 1);
+
+        assertFalse(rules.isKnockedOut(Set.of("clone"), NONE_TRUE, Set.of()));
+        assertTrue(rules.isKnockedOut(Set.of(), NONE_TRUE, Set.of("knocked_out")));
+        assertFalse(rules.isClone(0, Set.of(), NONE_TRUE, Set.of("knocked_out")));
+    }
+
+    @Test
+    void malformedRulesAreRejectedAndSkipped() {
+        assertTrue(DetectionRules.isValidRule("nbt:HardcoreRevival=2"));
+        assertTrue(DetectionRules.isValidRule(" type:reviv "));
+        assertFalse(DetectionRules.isValidRule("HardcoreRevival"));
+        assertFalse(DetectionRules.isValidRule("nbt:key=abc"));
+        assertFalse(DetectionRules.isValidRule("block:key=1"));
+        assertFalse(DetectionRules.isValidRule(42));
+
+        DetectionRules rules = clone(1, "HardcoreRevival", "nbt:downed");
+        assertFalse(rules.isClone(0, Set.of("HardcoreRevival"), NONE_TRUE, Set.of()));
+        assertTrue(rules.isClone(0, Set.of("downed"), NONE_TRUE, Set.of()));
+    }
+
+    @Test
+    void revivalKeyMaskFollowsTheCloneRules() {
+        DetectionRules rules = clone(1, "nbt:HardcoreRevival=1", "nbt:corpse=0", "nbt:custom_body=0",
+                "flag:IsRevivalClone=1", "nbt:grave=-1");
+
+        assertEquals(CloneFlags.HARDCORE_REVIVAL, rules.revivalKeyMask(Set.of("HardcoreRevival"), NONE_TRUE));
+        assertEquals(CloneFlags.CORPSE, rules.revivalKeyMask(Set.of("corpse"), NONE_TRUE));
+        // Keys without a report flag of their own only set the generic marker
+        assertEquals(CloneFlags.REVIVAL_TAG, rules.revivalKeyMask(Set.of("custom_body"), NONE_TRUE));
+        assertEquals(0, rules.revivalKeyMask(Set.of("IsRevivalClone"), NONE_TRUE));
+        assertEquals(CloneFlags.IS_REVIVAL_CLONE, rules.revivalKeyMask(Set.of("IsRevivalClone"), ALL_TRUE));
+        // Evidence against a clone is never a marker
+        assertEquals(0, rules.revivalKeyMask(Set.of("grave"), ALL_TRUE));
+    }
+
+    @Test
+    void theModsOwnKeysAreNeverMarkers() {
+        DetectionRules rules = clone(1, "nbt:DeathDetanglerOwner=1", "nbt:DeathDetanglerClone=0");
+
+        assertEquals(0, rules.revivalKeyMask(Set.of("DeathDetanglerOwner", "DeathDetanglerClone"), ALL_TRUE));
+        assertTrue(rules.isClone(0, Set.of("DeathDetanglerOwner"), NONE_TRUE, Set.of()));
+    }
+
+    @Test
+    void defaultMarkersIncludeAnIsRevivalCloneKeyOfAnyValue() {
+        DetectionRules rules = DetectionRules.compile(DetectionRules.DEFAULT_CLONE_RULES, 1,
+                DetectionRules.DEFAULT_KNOCKOUT_RULES, 1);
+
+        assertEquals(CloneFlags.IS_REVIVAL_CLONE, rules.revivalKeyMask(Set.of("IsRevivalClone"), NONE_TRUE));
+        assertFalse(rules.isClone(0, Set.of("IsRevivalClone"), NONE_TRUE, Set.of()));
+        assertEquals(0, rules.revivalKeyMask(Set.of("DeathDetanglerOwner"), NONE_TRUE));
+    }
+}